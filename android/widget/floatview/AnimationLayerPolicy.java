@@ -0,0 +1,128 @@
+/**
+ * Copyright 2015 RECRUIT LIFESTYLE CO., LTD.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.taptap.common.widget.floatview;
+
+import android.animation.Animator;
+import android.animation.AnimatorListenerAdapter;
+import android.view.View;
+
+import java.util.ArrayList;
+
+/**
+ * Promotes an animating subtree to a hardware layer for the duration of the animation and demotes it afterwards.
+ * Alpha and scale changes then only composite the layer instead of redrawing(and, for alpha, re-rendering offscreen) the subtree every frame.
+ * Views that already have a layer type are left untouched.
+ */
+class AnimationLayerPolicy {
+
+    /**
+     * Views promoted by this policy
+     */
+    private final ArrayList<View> mPromotedViews;
+
+    /**
+     * Enabled flag
+     */
+    private boolean mIsEnabled;
+
+    /**
+     * Number of promotions
+     */
+    private int mPromotionCount;
+
+    /**
+     * Constructor
+     */
+    AnimationLayerPolicy() {
+        mPromotedViews = new ArrayList<>();
+        mIsEnabled = true;
+    }
+
+    /**
+     * Enable or disable the policy. Disabling demotes all promoted views.
+     *
+     * @param enabled true to use hardware layers during animations
+     */
+    void setEnabled(boolean enabled) {
+        mIsEnabled = enabled;
+        if (!enabled) {
+            for (int i = mPromotedViews.size() - 1; i >= 0; i--) {
+                demote(mPromotedViews.get(i));
+            }
+        }
+    }
+
+    /**
+     * @return true if enabled
+     */
+    boolean isEnabled() {
+        return mIsEnabled;
+    }
+
+    /**
+     * @return number of promotions so far
+     */
+    int getPromotionCount() {
+        return mPromotionCount;
+    }
+
+    /**
+     * Promote the view to a hardware layer. Does nothing if it is already promoted.
+     *
+     * @param view animating view
+     */
+    void promote(View view) {
+        if (!mIsEnabled || view.getLayerType() != View.LAYER_TYPE_NONE || !view.isHardwareAccelerated()) {
+            return;
+        }
+        view.setLayerType(View.LAYER_TYPE_HARDWARE, null);
+        mPromotedViews.add(view);
+        mPromotionCount++;
+    }
+
+    /**
+     * Demote the view if it was promoted by this policy.
+     *
+     * @param view view
+     */
+    void demote(View view) {
+        if (mPromotedViews.remove(view)) {
+            view.setLayerType(View.LAYER_TYPE_NONE, null);
+        }
+    }
+
+    /**
+     * Create a listener that promotes the view while the animator runs.
+     *
+     * @param view animated view
+     * @return {@link Animator.AnimatorListener}
+     */
+    Animator.AnimatorListener newAnimatorListener(final View view) {
+        return new AnimatorListenerAdapter() {
+            @Override
+            public void onAnimationStart(Animator animation) {
+                promote(view);
+            }
+
+            @Override
+            public void onAnimationEnd(Animator animation) {
+                // also called after onAnimationCancel
+                demote(view);
+            }
+        };
+    }
+}
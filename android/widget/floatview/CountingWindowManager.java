@@ -0,0 +1,162 @@
+/**
+ * Copyright 2015 RECRUIT LIFESTYLE CO., LTD.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.taptap.common.widget.floatview;
+
+import android.os.Build;
+import android.view.Display;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.WindowManager;
+import android.view.WindowMetrics;
+
+import androidx.annotation.RequiresApi;
+
+/**
+ * WindowManager that counts the window operations before delegating them.
+ * FloatingViewManager hands it to all its views, so the counts cover every window of the manager.
+ * They are checked against a {@link WindowOperationBudget} after a gesture trace replay.
+ */
+class CountingWindowManager implements WindowManager {
+
+    /**
+     * WindowManager that actually executes the operations
+     */
+    private final WindowManager mDelegate;
+
+    /**
+     * Number of addView calls
+     */
+    private int mAddViewCount;
+
+    /**
+     * Number of updateViewLayout calls
+     */
+    private int mUpdateViewLayoutCount;
+
+    /**
+     * Number of removeView/removeViewImmediate calls
+     */
+    private int mRemoveViewCount;
+
+    /**
+     * Constructor
+     *
+     * @param delegate WindowManager that actually executes the operations
+     */
+    CountingWindowManager(WindowManager delegate) {
+        mDelegate = delegate;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Display getDefaultDisplay() {
+        return mDelegate.getDefaultDisplay();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @RequiresApi(Build.VERSION_CODES.R)
+    @Override
+    public WindowMetrics getCurrentWindowMetrics() {
+        return mDelegate.getCurrentWindowMetrics();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @RequiresApi(Build.VERSION_CODES.R)
+    @Override
+    public WindowMetrics getMaximumWindowMetrics() {
+        return mDelegate.getMaximumWindowMetrics();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void addView(View view, ViewGroup.LayoutParams params) {
+        mAddViewCount++;
+        mDelegate.addView(view, params);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateViewLayout(View view, ViewGroup.LayoutParams params) {
+        mUpdateViewLayoutCount++;
+        mDelegate.updateViewLayout(view, params);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void removeView(View view) {
+        mRemoveViewCount++;
+        mDelegate.removeView(view);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void removeViewImmediate(View view) {
+        mRemoveViewCount++;
+        mDelegate.removeViewImmediate(view);
+    }
+
+    /**
+     * @return number of addView calls
+     */
+    int getAddViewCount() {
+        return mAddViewCount;
+    }
+
+    /**
+     * @return number of updateViewLayout calls
+     */
+    int getUpdateViewLayoutCount() {
+        return mUpdateViewLayoutCount;
+    }
+
+    /**
+     * @return number of removeView/removeViewImmediate calls
+     */
+    int getRemoveViewCount() {
+        return mRemoveViewCount;
+    }
+
+    /**
+     * @return number of all window operations
+     */
+    int getTotalCount() {
+        return mAddViewCount + mUpdateViewLayoutCount + mRemoveViewCount;
+    }
+
+    /**
+     * Reset all counts(call at the start of each scenario).
+     */
+    void reset() {
+        mAddViewCount = 0;
+        mUpdateViewLayoutCount = 0;
+        mRemoveViewCount = 0;
+    }
+}
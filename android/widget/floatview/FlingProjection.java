@@ -0,0 +1,62 @@
+/**
+ * Copyright 2015 RECRUIT LIFESTYLE CO., LTD.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.taptap.common.widget.floatview;
+
+/**
+ * Analytic landing point of a {@link androidx.dynamicanimation.animation.FlingAnimation}.
+ * <p>
+ * FlingAnimation decays the velocity exponentially, v(t) = v0 * e^(-k * t) with k = 4.2 * friction,
+ * so the distance it travels until it stops is the integral v0 / k. The projection is a single division,
+ * which lets the goal selection run on every release without simulating the animation.
+ */
+final class FlingProjection {
+
+    /**
+     * Friction multiplier of FlingAnimation(FlingAnimation.DragForce DEFAULT_FRICTION)
+     */
+    private static final float FRICTION_MULTIPLIER = 4.2f;
+
+    private FlingProjection() {
+    }
+
+    /**
+     * Where a fling comes to rest, ignoring the bounds.
+     *
+     * @param start    start value(px)
+     * @param velocity start velocity(px/s)
+     * @param friction friction of the FlingAnimation
+     * @return landing value(px)
+     */
+    static float project(float start, float velocity, float friction) {
+        return start + velocity / (friction * FRICTION_MULTIPLIER);
+    }
+
+    /**
+     * Check whether a fling comes to rest between the bounds, that is, FlingAnimation does not stop abruptly at min or max.
+     *
+     * @param start    start value(px)
+     * @param velocity start velocity(px/s)
+     * @param friction friction of the FlingAnimation
+     * @param min      minimum value(px)
+     * @param max      maximum value(px)
+     * @return true if the fling lands inside [min, max]
+     */
+    static boolean landsWithin(float start, float velocity, float friction, float min, float max) {
+        final float landing = project(start, velocity, friction);
+        return landing >= min && landing <= max;
+    }
+}
@@ -0,0 +1,189 @@
+/**
+ * Copyright 2015 RECRUIT LIFESTYLE CO., LTD.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.taptap.common.widget.floatview;
+
+import android.view.Choreographer;
+
+import java.util.ArrayList;
+
+/**
+ * FloatingViewManager共享的动画定时器。
+ * 每帧只执行一次，在一次遍历中推进所有活动的动画(FloatingView的追随、重叠吸附、TrashView的开关)
+ * 和{@link FloatingTimerWheel}的延迟事件。
+ * 没有活动的动画时不注册帧回调。
+ */
+class FloatingAnimationTicker implements Choreographer.FrameCallback {
+
+    /**
+     * 由定时器驱动的动画。
+     */
+    interface Animation {
+
+        /**
+         * 推进一帧。
+         *
+         * @param frameTimeMillis 帧的时间(SystemClock.uptimeMillis基准)
+         * @return 继续动画时为true
+         */
+        boolean onTick(long frameTimeMillis);
+    }
+
+    /**
+     * 纳秒/毫秒
+     */
+    private static final long NANOS_PER_MILLIS = 1000000L;
+
+    /**
+     * 活动的动画
+     */
+    private final ArrayList<Animation> mAnimations;
+
+    /**
+     * 这一帧推进的动画的快照(跨帧重复使用)
+     */
+    private Animation[] mTickSnapshot;
+
+    /**
+     * 长按等的延迟事件
+     */
+    private final FloatingTimerWheel mTimerWheel;
+
+    /**
+     * 帧回调注册中的标志
+     */
+    private boolean mIsFrameCallbackPosted;
+
+    /**
+     * 每几帧推进一次动画(1时每帧)
+     */
+    private int mFrameInterval;
+
+    /**
+     * 上次推进以后的帧数
+     */
+    private int mFrameCount;
+
+    /**
+     * 构造器
+     */
+    FloatingAnimationTicker() {
+        mAnimations = new ArrayList<>();
+        mTickSnapshot = new Animation[4];
+        mTimerWheel = new FloatingTimerWheel(this);
+        mFrameInterval = 1;
+    }
+
+    /**
+     * 设定每几帧推进一次动画。动画按帧的时间计算，跳过的帧只是不绘制中间状态。
+     *
+     * @param frameInterval 帧间隔(1时每帧)
+     */
+    void setFrameInterval(int frameInterval) {
+        mFrameInterval = Math.max(1, frameInterval);
+        mFrameCount = 0;
+    }
+
+    /**
+     * 取得由这个定时器推进的时间轮。
+     *
+     * @return {@link FloatingTimerWheel}
+     */
+    FloatingTimerWheel getTimerWheel() {
+        return mTimerWheel;
+    }
+
+    /**
+     * 开始驱动动画。已经在驱动中的情况下什么都不做。
+     *
+     * @param animation {@link Animation}
+     */
+    void start(Animation animation) {
+        if (!mAnimations.contains(animation)) {
+            mAnimations.add(animation);
+        }
+        if (!mIsFrameCallbackPosted) {
+            mIsFrameCallbackPosted = true;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    /**
+     * 停止驱动动画。
+     *
+     * @param animation {@link Animation}
+     */
+    void stop(Animation animation) {
+        mAnimations.remove(animation);
+        if (mAnimations.isEmpty() && mIsFrameCallbackPosted) {
+            mIsFrameCallbackPosted = false;
+            Choreographer.getInstance().removeFrameCallback(this);
+        }
+    }
+
+    /**
+     * 停止所有动画，取消所有延迟事件。
+     */
+    void stopAll() {
+        mTimerWheel.cancelAll();
+        mAnimations.clear();
+        if (mIsFrameCallbackPosted) {
+            mIsFrameCallbackPosted = false;
+            Choreographer.getInstance().removeFrameCallback(this);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        mIsFrameCallbackPosted = false;
+        // 没到帧间隔的情况下只等待下一帧
+        if (++mFrameCount < mFrameInterval) {
+            if (!mAnimations.isEmpty()) {
+                mIsFrameCallbackPosted = true;
+                Choreographer.getInstance().postFrameCallback(this);
+            }
+            return;
+        }
+        mFrameCount = 0;
+        final long frameTimeMillis = frameTimeNanos / NANOS_PER_MILLIS;
+        // 遍历快照：onTick(包括时间轮的事件)中停止任何动画都不会影响遍历
+        final int size = mAnimations.size();
+        if (mTickSnapshot.length < size) {
+            mTickSnapshot = new Animation[Math.max(size, mTickSnapshot.length * 2)];
+        }
+        for (int i = 0; i < size; i++) {
+            mTickSnapshot[i] = mAnimations.get(i);
+        }
+        for (int i = 0; i < size; i++) {
+            final Animation animation = mTickSnapshot[i];
+            mTickSnapshot[i] = null;
+            // 在这一帧中已经被停止的动画不推进
+            if (!mAnimations.contains(animation)) {
+                continue;
+            }
+            if (!animation.onTick(frameTimeMillis)) {
+                mAnimations.remove(animation);
+            }
+        }
+        if (!mAnimations.isEmpty() && !mIsFrameCallbackPosted) {
+            mIsFrameCallbackPosted = true;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+}
@@ -0,0 +1,254 @@
+/**
+ * Copyright 2015 RECRUIT LIFESTYLE CO., LTD.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.taptap.common.widget.floatview;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.os.Build;
+import android.text.TextUtils;
+import android.view.WindowManager;
+
+import androidx.annotation.IntDef;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.Locale;
+
+/**
+ * Capability tier of the device, used by {@link FloatingViewManager} to pick its defaults:
+ * physics or tween animations, animation tick rate, drag snapshot and the shared window.
+ * <p>
+ * The tier combines the ROM, the memory class, the CPU count and the refresh rate of the display.
+ * Apps override it with {@link FloatingViewManager#setDeviceProfile(FloatingDeviceProfile)},
+ * and each bubble can still override the defaults through its {@link FloatingViewManager.Options}.
+ */
+public class FloatingDeviceProfile {
+
+    /**
+     * Low-end device(low RAM, few cores)
+     */
+    public static final int TIER_LOW = 0;
+
+    /**
+     * Mid-range device
+     */
+    public static final int TIER_MID = 1;
+
+    /**
+     * High-end device(large heap, many cores, high refresh rate)
+     */
+    public static final int TIER_HIGH = 2;
+
+    /**
+     * Tier
+     */
+    @IntDef({TIER_LOW, TIER_MID, TIER_HIGH})
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface Tier {
+    }
+
+    /**
+     * Memory class at or below which the device is low-end(MB)
+     */
+    private static final int LOW_MEMORY_CLASS = 128;
+
+    /**
+     * Memory class at or above which the device is high-end(MB)
+     */
+    private static final int HIGH_MEMORY_CLASS = 256;
+
+    /**
+     * CPU count at or below which the device is low-end
+     */
+    private static final int LOW_CPU_COUNT = 4;
+
+    /**
+     * CPU count at or above which the device is high-end
+     */
+    private static final int HIGH_CPU_COUNT = 8;
+
+    /**
+     * Refresh rate at or above which the device is high-end(Hz)
+     */
+    private static final float HIGH_REFRESH_RATE = 90f;
+
+    /**
+     * Animation rate of low-end devices(Hz)
+     */
+    private static final float LOW_TIER_ANIMATION_RATE = 60f;
+
+    /**
+     * Memory class at or below which the device is low-end on ROMs in MEMORY_CONSTRAINED_ROMS(MB)
+     */
+    private static final int CONSTRAINED_ROM_LOW_MEMORY_CLASS = 192;
+
+    /**
+     * ROMs whose background process limits make a low memory class more likely to mean a low-end device.
+     * Names as returned by RomUtils.getRomInfo().getName().
+     */
+    private static final String[] MEMORY_CONSTRAINED_ROMS = {"vivo", "oppo", "smartisan"};
+
+    /**
+     * Tier
+     */
+    @Tier
+    private final int mTier;
+
+    /**
+     * ROM name
+     */
+    private final String mRomName;
+
+    /**
+     * Refresh rate of the display(Hz)
+     */
+    private final float mRefreshRate;
+
+    /**
+     * Constructor
+     *
+     * @param tier        {@link Tier}
+     * @param romName     ROM name(RomUtils.getRomInfo().getName(), may be null)
+     * @param refreshRate refresh rate of the display(Hz)
+     */
+    public FloatingDeviceProfile(@Tier int tier, String romName, float refreshRate) {
+        mTier = tier;
+        mRomName = romName;
+        mRefreshRate = refreshRate;
+    }
+
+    /**
+     * Detect the profile of this device. The ROM name falls back to Build.MANUFACTURER as RomUtils does.
+     *
+     * @param context {@link Context}
+     * @return {@link FloatingDeviceProfile}
+     */
+    public static FloatingDeviceProfile detect(Context context) {
+        return detect(context, null);
+    }
+
+    /**
+     * Detect the profile of this device.
+     *
+     * @param context {@link Context}
+     * @param romName RomUtils.getRomInfo().getName()(null to use Build.MANUFACTURER)
+     * @return {@link FloatingDeviceProfile}
+     */
+    public static FloatingDeviceProfile detect(Context context, String romName) {
+        if (TextUtils.isEmpty(romName)) {
+            romName = Build.MANUFACTURER == null ? "" : Build.MANUFACTURER.toLowerCase(Locale.US);
+        }
+        final ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        final WindowManager windowManager = (WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
+        final int memoryClass = activityManager.getMemoryClass();
+        final boolean isLowRamDevice = Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT && activityManager.isLowRamDevice();
+        final int cpuCount = Runtime.getRuntime().availableProcessors();
+        final float refreshRate = windowManager.getDefaultDisplay().getRefreshRate();
+
+        int lowMemoryClass = LOW_MEMORY_CLASS;
+        for (String name : MEMORY_CONSTRAINED_ROMS) {
+            if (romName.contains(name)) {
+                lowMemoryClass = CONSTRAINED_ROM_LOW_MEMORY_CLASS;
+                break;
+            }
+        }
+
+        final int tier;
+        if (isLowRamDevice || memoryClass <= lowMemoryClass || cpuCount <= LOW_CPU_COUNT) {
+            tier = TIER_LOW;
+        } else if (memoryClass >= HIGH_MEMORY_CLASS && cpuCount >= HIGH_CPU_COUNT && refreshRate >= HIGH_REFRESH_RATE) {
+            tier = TIER_HIGH;
+        } else {
+            tier = TIER_MID;
+        }
+        return new FloatingDeviceProfile(tier, romName, refreshRate);
+    }
+
+    /**
+     * @return {@link Tier}
+     */
+    @Tier
+    public int getTier() {
+        return mTier;
+    }
+
+    /**
+     * @return ROM name
+     */
+    public String getRomName() {
+        return mRomName;
+    }
+
+    /**
+     * @return refresh rate of the display(Hz)
+     */
+    public float getRefreshRate() {
+        return mRefreshRate;
+    }
+
+    /**
+     * Default of {@link FloatingViewManager.Options#usePhysics}.
+     * Low-end devices use ValueAnimator, which is cheaper per frame than the spring and fling solvers.
+     *
+     * @return true to use physics-based animations
+     */
+    public boolean usePhysics() {
+        return mTier != TIER_LOW;
+    }
+
+    /**
+     * Default of {@link FloatingViewManager.Options#useDragSnapshot}.
+     * Low-end devices redraw only a snapshot of the content while dragging.
+     *
+     * @return true to draw a snapshot while dragging
+     */
+    public boolean useDragSnapshot() {
+        return mTier == TIER_LOW;
+    }
+
+    /**
+     * Default of {@link FloatingViewManager#setSharedWindowEnabled(boolean)}.
+     * Low-end devices keep one small window per bubble instead of compositing a fullscreen window.
+     * Devices that can not use the shared window(Android 12 and later, or no touchable region) also keep one window per bubble.
+     *
+     * @return true to use the shared window
+     */
+    public boolean useSharedWindow() {
+        return mTier != TIER_LOW && SharedOverlayView.isSupported();
+    }
+
+    /**
+     * Number of display frames per animation tick.
+     * Low-end devices with a high refresh rate animate at about 60Hz.
+     *
+     * @return frame interval(1 = every frame)
+     */
+    public int getFrameInterval() {
+        if (mTier != TIER_LOW || mRefreshRate <= LOW_TIER_ANIMATION_RATE) {
+            return 1;
+        }
+        return Math.max(1, Math.round(mRefreshRate / LOW_TIER_ANIMATION_RATE));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "FloatingDeviceProfile{tier=" + mTier + ", rom=" + mRomName + ", refreshRate=" + mRefreshRate + "}";
+    }
+}
@@ -0,0 +1,300 @@
+/**
+ * Copyright 2015 RECRUIT LIFESTYLE CO., LTD.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.taptap.common.widget.floatview;
+
+import android.content.Context;
+import android.hardware.display.DisplayManager;
+import android.os.Build;
+import android.util.SparseArray;
+import android.view.Display;
+import android.view.View;
+import android.view.WindowManager;
+
+import androidx.annotation.RequiresApi;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Shows bubbles on several displays(foldables, desktop mode, external displays).
+ * <p>
+ * Each display gets its own {@link FloatingViewManager}, created from a context of that display, so its WindowManager and
+ * its cached display state are bound to that display. Bubbles move between displays by being detached from one manager
+ * and added to the manager of the other display. When a display is removed, its bubbles move to the default display.
+ * <p>
+ * {@link FloatingViewListener#onFinishFloatingView()} is called when no bubble is left on any display.
+ */
+@RequiresApi(Build.VERSION_CODES.JELLY_BEAN_MR1)
+public class FloatingDisplayManager implements DisplayManager.DisplayListener, FloatingViewListener {
+
+    /**
+     * Context
+     */
+    private final Context mContext;
+
+    /**
+     * DisplayManager
+     */
+    private final DisplayManager mDisplayManager;
+
+    /**
+     * FloatingViewListener
+     */
+    private final FloatingViewListener mFloatingViewListener;
+
+    /**
+     * FloatingViewManager of each display
+     */
+    private final SparseArray<FloatingViewManager> mManagers;
+
+    /**
+     * Options of each bubble(used when the bubble moves to another display)
+     */
+    private final Map<View, FloatingViewManager.Options> mOptions;
+
+    /**
+     * Listening to the displays
+     */
+    private boolean mIsRegistered;
+
+    /**
+     * Constructor
+     *
+     * @param context  {@link Context}
+     * @param listener {@link FloatingViewListener}
+     */
+    public FloatingDisplayManager(Context context, FloatingViewListener listener) {
+        mContext = context;
+        mDisplayManager = (DisplayManager) context.getSystemService(Context.DISPLAY_SERVICE);
+        mFloatingViewListener = listener;
+        mManagers = new SparseArray<>();
+        mOptions = new HashMap<>();
+    }
+
+    /**
+     * Get the FloatingViewManager of a display(created on first use).
+     *
+     * @param displayId display id
+     * @return {@link FloatingViewManager}(null if the display does not exist)
+     */
+    public FloatingViewManager getFloatingViewManager(int displayId) {
+        FloatingViewManager manager = mManagers.get(displayId);
+        if (manager != null) {
+            return manager;
+        }
+        final Display display = mDisplayManager.getDisplay(displayId);
+        if (display == null) {
+            return null;
+        }
+        final Context context = displayId == Display.DEFAULT_DISPLAY ? mContext : createOverlayContext(display);
+        manager = new FloatingViewManager(context, this);
+        mManagers.put(displayId, manager);
+        return manager;
+    }
+
+    /**
+     * Create the context of the overlay windows of a display.
+     * A display context is not a visual context, so a window context is used where available(StrictMode incorrect context).
+     *
+     * @param display {@link Display}
+     * @return {@link Context}
+     */
+    private Context createOverlayContext(Display display) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
+            return mContext.createWindowContext(display, WindowManager.LayoutParams.TYPE_APPLICATION_OVERLAY, null);
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            return mContext.createDisplayContext(display).createWindowContext(WindowManager.LayoutParams.TYPE_APPLICATION_OVERLAY, null);
+        }
+        return mContext.createDisplayContext(display);
+    }
+
+    /**
+     * Paste the View to the window of a display.
+     *
+     * @param view      View to float
+     * @param displayId display id
+     * @param options   {@link FloatingViewManager.Options}
+     * @return false if the display does not exist
+     */
+    public boolean addViewToWindow(View view, int displayId, FloatingViewManager.Options options) {
+        final FloatingViewManager manager = getFloatingViewManager(displayId);
+        if (manager == null) {
+            return false;
+        }
+        registerIfNeeded();
+        mOptions.put(view, options);
+        manager.addViewToWindow(view, options);
+        return true;
+    }
+
+    /**
+     * Move a bubble to another display. The bubble is placed by its options on the new display.
+     *
+     * @param view      View pasted by {@link #addViewToWindow(View, int, FloatingViewManager.Options)}
+     * @param displayId display id
+     * @return false if the View is not shown or the display does not exist
+     */
+    public boolean moveViewToDisplay(View view, int displayId) {
+        final FloatingViewManager.Options options = mOptions.get(view);
+        final FloatingViewManager target = getFloatingViewManager(displayId);
+        if (options == null || target == null) {
+            return false;
+        }
+        final FloatingViewManager source = findManager(view);
+        if (source == null) {
+            mOptions.remove(view);
+            return false;
+        }
+        if (source == target) {
+            return true;
+        }
+        source.detachViewFromWindow(view);
+        target.addViewToWindow(view, options);
+        return true;
+    }
+
+    /**
+     * Get the display showing a bubble.
+     *
+     * @param view View to float
+     * @return display id(Display.INVALID_DISPLAY if the View is not shown)
+     */
+    public int getDisplayId(View view) {
+        final FloatingViewManager manager = findManager(view);
+        return manager != null ? manager.getDisplayId() : Display.INVALID_DISPLAY;
+    }
+
+    /**
+     * Remove the Views of all displays.
+     */
+    public void removeAllViewToWindow() {
+        final int size = mManagers.size();
+        for (int i = 0; i < size; i++) {
+            mManagers.valueAt(i).removeAllViewToWindow();
+        }
+        mManagers.clear();
+        mOptions.clear();
+        if (mIsRegistered) {
+            mDisplayManager.unregisterDisplayListener(this);
+            mIsRegistered = false;
+        }
+    }
+
+    /**
+     * Start listening to the displays(on the thread of the caller).
+     */
+    private void registerIfNeeded() {
+        if (!mIsRegistered) {
+            mDisplayManager.registerDisplayListener(this, null);
+            mIsRegistered = true;
+        }
+    }
+
+    /**
+     * Find the manager showing a View.
+     *
+     * @param view View to float
+     * @return {@link FloatingViewManager}(null if the View is not shown)
+     */
+    private FloatingViewManager findManager(View view) {
+        final int size = mManagers.size();
+        for (int i = 0; i < size; i++) {
+            final FloatingViewManager manager = mManagers.valueAt(i);
+            if (manager.containsView(view)) {
+                return manager;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onDisplayAdded(int displayId) {
+        // the manager is created when a bubble is added to the display
+    }
+
+    /**
+     * Move the bubbles of a removed display to the default display.
+     */
+    @Override
+    public void onDisplayRemoved(int displayId) {
+        final FloatingViewManager removed = mManagers.get(displayId);
+        if (removed == null || displayId == Display.DEFAULT_DISPLAY) {
+            return;
+        }
+        final ArrayList<View> views = new ArrayList<>();
+        for (View view : mOptions.keySet()) {
+            if (removed.containsView(view)) {
+                views.add(view);
+            }
+        }
+        final FloatingViewManager target = getFloatingViewManager(Display.DEFAULT_DISPLAY);
+        for (View view : views) {
+            removed.detachViewFromWindow(view);
+            target.addViewToWindow(view, mOptions.get(view));
+        }
+        removed.removeAllViewToWindow();
+        mManagers.remove(displayId);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onDisplayChanged(int displayId) {
+        // each manager refreshes its own display state
+    }
+
+    /**
+     * Called when the last bubble of a display is removed. The windows and the display listener of that display
+     * are released, and the call is forwarded when no bubble is left on any display.
+     */
+    @Override
+    public void onFinishFloatingView() {
+        for (int i = mManagers.size() - 1; i >= 0; i--) {
+            final FloatingViewManager manager = mManagers.valueAt(i);
+            if (manager.isEmpty()) {
+                manager.removeAllViewToWindow();
+                mManagers.removeAt(i);
+            }
+        }
+        final Iterator<View> iterator = mOptions.keySet().iterator();
+        while (iterator.hasNext()) {
+            if (findManager(iterator.next()) == null) {
+                iterator.remove();
+            }
+        }
+        if (mOptions.isEmpty() && mFloatingViewListener != null) {
+            mFloatingViewListener.onFinishFloatingView();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onTouchFinished(boolean isFinishing, int x, int y) {
+        if (mFloatingViewListener != null) {
+            mFloatingViewListener.onTouchFinished(isFinishing, x, y);
+        }
+    }
+}
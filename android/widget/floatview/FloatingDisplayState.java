@@ -0,0 +1,226 @@
+/**
+ * Copyright 2015 RECRUIT LIFESTYLE CO., LTD.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.taptap.common.widget.floatview;
+
+import android.content.Context;
+import android.hardware.display.DisplayManager;
+import android.os.Build;
+import android.util.DisplayMetrics;
+import android.view.Display;
+
+/**
+ * Cached state of the display a {@link FloatingViewManager} is bound to.
+ * <p>
+ * The FloatingViews, the TrashView and the manager read the metrics, the rotation and the refresh rate from here
+ * instead of querying the Display on every layout. The cache is read again when the DisplayListener reports
+ * a change of this display(and once when listening starts, since changes are missed while not listening).
+ * <p>
+ * The DisplayListener may be called after onConfigurationChanged and after the global layout of the window,
+ * so the views also call {@link #refresh()} from those callbacks before reading the cache.
+ */
+class FloatingDisplayState implements DisplayManager.DisplayListener {
+
+    /**
+     * Notified after the state of the display has been refreshed.
+     */
+    interface OnDisplayChangedListener {
+
+        /**
+         * The display changed(size, rotation or refresh rate).
+         *
+         * @param state {@link FloatingDisplayState}
+         */
+        void onDisplayChanged(FloatingDisplayState state);
+    }
+
+    /**
+     * Display
+     */
+    private final Display mDisplay;
+
+    /**
+     * DisplayManager(null before Android 4.2)
+     */
+    private final DisplayManager mDisplayManager;
+
+    /**
+     * Metrics of the application area
+     */
+    private final DisplayMetrics mMetrics;
+
+    /**
+     * Metrics of the whole display(including the navigation bar)
+     */
+    private final DisplayMetrics mRealMetrics;
+
+    /**
+     * Rotation
+     */
+    private int mRotation;
+
+    /**
+     * Refresh rate(Hz)
+     */
+    private float mRefreshRate;
+
+    /**
+     * Listener(null if not listening)
+     */
+    private OnDisplayChangedListener mListener;
+
+    /**
+     * Constructor
+     *
+     * @param context {@link Context}
+     * @param display {@link Display}
+     */
+    FloatingDisplayState(Context context, Display display) {
+        mDisplay = display;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+            mDisplayManager = (DisplayManager) context.getSystemService(Context.DISPLAY_SERVICE);
+        } else {
+            mDisplayManager = null;
+        }
+        mMetrics = new DisplayMetrics();
+        mRealMetrics = new DisplayMetrics();
+        refresh();
+    }
+
+    /**
+     * Start listening to the changes of the display(on the thread of the caller).
+     *
+     * @param listener {@link OnDisplayChangedListener}
+     */
+    void register(OnDisplayChangedListener listener) {
+        if (mListener == null && mDisplayManager != null) {
+            mDisplayManager.registerDisplayListener(this, null);
+            refresh();
+        }
+        mListener = listener;
+    }
+
+    /**
+     * Stop listening to the changes of the display.
+     */
+    void unregister() {
+        if (mListener != null && mDisplayManager != null) {
+            mDisplayManager.unregisterDisplayListener(this);
+        }
+        mListener = null;
+    }
+
+    /**
+     * @return {@link Display}
+     */
+    Display getDisplay() {
+        return mDisplay;
+    }
+
+    /**
+     * @return id of the display
+     */
+    int getDisplayId() {
+        return mDisplay.getDisplayId();
+    }
+
+    /**
+     * Copy the metrics of the application area.
+     *
+     * @param outMetrics {@link DisplayMetrics}
+     */
+    void getMetrics(DisplayMetrics outMetrics) {
+        outMetrics.setTo(mMetrics);
+    }
+
+    /**
+     * Copy the metrics of the whole display. Same as {@link #getMetrics(DisplayMetrics)} before Android 4.2.
+     *
+     * @param outMetrics {@link DisplayMetrics}
+     */
+    void getRealMetrics(DisplayMetrics outMetrics) {
+        outMetrics.setTo(mRealMetrics);
+    }
+
+    /**
+     * @return rotation of the display
+     */
+    int getRotation() {
+        return mRotation;
+    }
+
+    /**
+     * @return refresh rate of the display(Hz)
+     */
+    float getRefreshRate() {
+        return mRefreshRate;
+    }
+
+    /**
+     * Read the state of the display again.
+     *
+     * @return true if the state has changed
+     */
+    boolean refresh() {
+        final int oldWidth = mMetrics.widthPixels;
+        final int oldHeight = mMetrics.heightPixels;
+        final int oldRealWidth = mRealMetrics.widthPixels;
+        final int oldRealHeight = mRealMetrics.heightPixels;
+        final int oldRotation = mRotation;
+        final float oldRefreshRate = mRefreshRate;
+        mDisplay.getMetrics(mMetrics);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+            mDisplay.getRealMetrics(mRealMetrics);
+        } else {
+            mRealMetrics.setTo(mMetrics);
+        }
+        mRotation = mDisplay.getRotation();
+        mRefreshRate = mDisplay.getRefreshRate();
+        return oldWidth != mMetrics.widthPixels || oldHeight != mMetrics.heightPixels
+                || oldRealWidth != mRealMetrics.widthPixels || oldRealHeight != mRealMetrics.heightPixels
+                || oldRotation != mRotation || oldRefreshRate != mRefreshRate;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onDisplayAdded(int displayId) {
+        // do nothing
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onDisplayRemoved(int displayId) {
+        // handled by FloatingDisplayManager
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onDisplayChanged(int displayId) {
+        if (displayId != mDisplay.getDisplayId() || mListener == null) {
+            return;
+        }
+        // nothing to do if onConfigurationChanged or the global layout has already refreshed the state
+        if (refresh()) {
+            mListener.onDisplayChanged(this);
+        }
+    }
+}
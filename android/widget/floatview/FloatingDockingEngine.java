@@ -0,0 +1,175 @@
+/**
+ * Copyright 2015 RECRUIT LIFESTYLE CO., LTD.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.taptap.common.widget.floatview;
+
+import android.graphics.Point;
+import android.graphics.Rect;
+
+import java.util.ArrayList;
+
+/**
+ * Snap targets(dock points) shared by the FloatingViews of a manager.
+ * Targets are normalized to the PositionLimitRect of each bubble(0 = left/bottom, 1 = right/top),
+ * so the same target works for bubbles of any size and across rotation.
+ * <p>
+ * Targets are bucketed in a uniform grid. A query only visits the cells within the snap radius of the projected
+ * release position, so its cost depends on the targets near the finger rather than on the total number of targets.
+ * The release position is projected with {@link FlingProjection}, so the chosen target agrees with where a fling would land.
+ */
+class FloatingDockingEngine {
+
+    /**
+     * Cells per axis
+     */
+    private static final int GRID_SIZE = 8;
+
+    /**
+     * Targets of each cell(x, y pairs)
+     */
+    private final ArrayList<float[]>[] mCells;
+
+    /**
+     * Snap radius(px)
+     */
+    private int mSnapRadius;
+
+    /**
+     * Number of targets
+     */
+    private int mTargetCount;
+
+    /**
+     * Constructor
+     *
+     * @param snapRadius snap radius(px)
+     */
+    @SuppressWarnings("unchecked")
+    FloatingDockingEngine(int snapRadius) {
+        mCells = new ArrayList[GRID_SIZE * GRID_SIZE];
+        mSnapRadius = snapRadius;
+    }
+
+    /**
+     * Set the distance within which a bubble snaps to a target.
+     *
+     * @param snapRadius snap radius(px)
+     */
+    void setSnapRadius(int snapRadius) {
+        mSnapRadius = snapRadius;
+    }
+
+    /**
+     * Add a target.
+     *
+     * @param x normalized X coordinate(0 = left edge, 1 = right edge)
+     * @param y normalized Y coordinate(0 = bottom edge, 1 = top edge)
+     */
+    void addTarget(float x, float y) {
+        x = Math.min(Math.max(x, 0f), 1f);
+        y = Math.min(Math.max(y, 0f), 1f);
+        final int cell = cellOf(y) * GRID_SIZE + cellOf(x);
+        if (mCells[cell] == null) {
+            mCells[cell] = new ArrayList<>();
+        }
+        mCells[cell].add(new float[]{x, y});
+        mTargetCount++;
+    }
+
+    /**
+     * Remove all targets.
+     */
+    void clear() {
+        for (int i = 0; i < mCells.length; i++) {
+            mCells[i] = null;
+        }
+        mTargetCount = 0;
+    }
+
+    /**
+     * @return true if there is no target
+     */
+    boolean isEmpty() {
+        return mTargetCount == 0;
+    }
+
+    /**
+     * Find the target nearest to where the release velocity carries the bubble.
+     *
+     * @param x          X coordinate at release
+     * @param y          Y coordinate at release
+     * @param velocityX  X velocity(px/s)
+     * @param velocityY  Y velocity(px/s, upward positive)
+     * @param frictionX  X friction of the fling
+     * @param frictionY  Y friction of the fling
+     * @param limitRect  PositionLimitRect of the bubble
+     * @param outPoint   coordinates of the target
+     * @return true if a target is within the snap radius
+     */
+    boolean findTarget(int x, int y, float velocityX, float velocityY, float frictionX, float frictionY, Rect limitRect, Point outPoint) {
+        final int width = limitRect.width();
+        final int height = limitRect.height();
+        if (mTargetCount == 0 || width <= 0 || height <= 0) {
+            return false;
+        }
+        final float projectedX = Math.min(Math.max(FlingProjection.project(x, velocityX, frictionX), limitRect.left), limitRect.right);
+        final float projectedY = Math.min(Math.max(FlingProjection.project(y, velocityY, frictionY), limitRect.top), limitRect.bottom);
+        final float normalizedX = (projectedX - limitRect.left) / width;
+        final float normalizedY = (projectedY - limitRect.top) / height;
+        final float radiusX = mSnapRadius / (float) width;
+        final float radiusY = mSnapRadius / (float) height;
+
+        // 只看半径内的格子
+        final int minCellX = cellOf(normalizedX - radiusX);
+        final int maxCellX = cellOf(normalizedX + radiusX);
+        final int minCellY = cellOf(normalizedY - radiusY);
+        final int maxCellY = cellOf(normalizedY + radiusY);
+        float bestDistance = (float) mSnapRadius * mSnapRadius;
+        float[] bestTarget = null;
+        for (int cellY = minCellY; cellY <= maxCellY; cellY++) {
+            for (int cellX = minCellX; cellX <= maxCellX; cellX++) {
+                final ArrayList<float[]> targets = mCells[cellY * GRID_SIZE + cellX];
+                if (targets == null) {
+                    continue;
+                }
+                final int size = targets.size();
+                for (int i = 0; i < size; i++) {
+                    final float[] target = targets.get(i);
+                    final float dx = (target[0] - normalizedX) * width;
+                    final float dy = (target[1] - normalizedY) * height;
+                    final float distance = dx * dx + dy * dy;
+                    if (distance <= bestDistance) {
+                        bestDistance = distance;
+                        bestTarget = target;
+                    }
+                }
+            }
+        }
+        if (bestTarget == null) {
+            return false;
+        }
+        outPoint.set(FloatingView.resolveNormalized(limitRect.left, limitRect.right, bestTarget[0]),
+                FloatingView.resolveNormalized(limitRect.top, limitRect.bottom, bestTarget[1]));
+        return true;
+    }
+
+    /**
+     * Cell index of a normalized coordinate.
+     */
+    private static int cellOf(float normalized) {
+        return Math.min(Math.max((int) (normalized * GRID_SIZE), 0), GRID_SIZE - 1);
+    }
+}
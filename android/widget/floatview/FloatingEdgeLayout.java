@@ -0,0 +1,255 @@
+/**
+ * Copyright 2015 RECRUIT LIFESTYLE CO., LTD.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.taptap.common.widget.floatview;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Keeps the FloatingViews resting on the left and right edges from overlapping.
+ * <p>
+ * Each edge holds its bubbles as intervals [y, y + height] sorted by the position the bubble asked for.
+ * Placing a bubble is a binary-search insert followed by one sweep upward and one sweep downward,
+ * and only the bubbles whose resolved position changed are animated.
+ * The requested positions are kept, so displaced bubbles move back when the space frees up.
+ */
+class FloatingEdgeLayout {
+
+    /**
+     * Not on an edge
+     */
+    static final int EDGE_NONE = 0;
+
+    /**
+     * Left edge
+     */
+    static final int EDGE_LEFT = 1;
+
+    /**
+     * Right edge
+     */
+    static final int EDGE_RIGHT = 2;
+
+    /**
+     * Bubble on an edge.
+     */
+    private static final class Entry {
+        final FloatingView view;
+        int edge;
+        int desiredY;
+        int resolvedY;
+        int height;
+        int minY;
+        int maxY;
+
+        Entry(FloatingView view) {
+            this.view = view;
+        }
+    }
+
+    /**
+     * Bubbles on the left edge(sorted by desiredY)
+     */
+    private final ArrayList<Entry> mLeftEdge;
+
+    /**
+     * Bubbles on the right edge(sorted by desiredY)
+     */
+    private final ArrayList<Entry> mRightEdge;
+
+    /**
+     * Entry of each bubble
+     */
+    private final HashMap<FloatingView, Entry> mEntries;
+
+    /**
+     * Gap between stacked bubbles(px)
+     */
+    private final int mSpacing;
+
+    /**
+     * Enabled flag
+     */
+    private boolean mIsEnabled;
+
+    /**
+     * Constructor
+     *
+     * @param spacing gap between stacked bubbles(px)
+     */
+    FloatingEdgeLayout(int spacing) {
+        mLeftEdge = new ArrayList<>();
+        mRightEdge = new ArrayList<>();
+        mEntries = new HashMap<>();
+        mSpacing = spacing;
+        mIsEnabled = true;
+    }
+
+    /**
+     * Enable or disable stacking. Disabling forgets all bubbles without moving them.
+     *
+     * @param enabled true to stack bubbles on the edges
+     */
+    void setEnabled(boolean enabled) {
+        mIsEnabled = enabled;
+        if (!enabled) {
+            clear();
+        }
+    }
+
+    /**
+     * Place a bubble that comes to rest, and move the bubbles it displaces or releases.
+     *
+     * @param view     FloatingView
+     * @param edge     EDGE_LEFT, EDGE_RIGHT or EDGE_NONE
+     * @param desiredY Y coordinate the bubble asks for
+     * @param height   height of the bubble
+     * @param minY     lowest Y coordinate of the bubble
+     * @param maxY     highest Y coordinate of the bubble
+     * @return Y coordinate the bubble should rest at
+     */
+    int place(FloatingView view, int edge, int desiredY, int height, int minY, int maxY) {
+        if (!mIsEnabled) {
+            return desiredY;
+        }
+        Entry entry = mEntries.get(view);
+        final ArrayList<Entry> oldEdge = entry != null ? edgeOf(entry.edge) : null;
+        if (oldEdge != null) {
+            oldEdge.remove(entry);
+        }
+        if (edge == EDGE_NONE) {
+            mEntries.remove(view);
+            if (oldEdge != null) {
+                resolve(oldEdge, null);
+            }
+            return desiredY;
+        }
+        if (entry == null) {
+            entry = new Entry(view);
+            mEntries.put(view, entry);
+        }
+        entry.edge = edge;
+        entry.desiredY = Math.min(Math.max(desiredY, minY), maxY);
+        entry.resolvedY = entry.desiredY;
+        entry.height = height;
+        entry.minY = minY;
+        entry.maxY = maxY;
+
+        final ArrayList<Entry> newEdge = edgeOf(edge);
+        newEdge.add(insertionIndex(newEdge, entry.desiredY), entry);
+        resolve(newEdge, entry);
+        if (oldEdge != null && oldEdge != newEdge) {
+            resolve(oldEdge, null);
+        }
+        return entry.resolvedY;
+    }
+
+    /**
+     * Remove a bubble, and move back the bubbles it displaced.
+     *
+     * @param view FloatingView
+     */
+    void remove(FloatingView view) {
+        final Entry entry = mEntries.remove(view);
+        if (entry == null) {
+            return;
+        }
+        final ArrayList<Entry> edge = edgeOf(entry.edge);
+        edge.remove(entry);
+        resolve(edge, null);
+    }
+
+    /**
+     * Forget all bubbles.
+     */
+    void clear() {
+        mLeftEdge.clear();
+        mRightEdge.clear();
+        mEntries.clear();
+    }
+
+    /**
+     * Resolve non-overlapping positions on an edge and animate the bubbles that moved(except the placed one).
+     *
+     * @param edge   bubbles on the edge
+     * @param placed bubble being placed(null if none)
+     */
+    private void resolve(ArrayList<Entry> edge, Entry placed) {
+        final int size = edge.size();
+        if (size == 0) {
+            return;
+        }
+        final int[] positions = new int[size];
+        // 从下往上: 和下面的重叠时往上推
+        for (int i = 0; i < size; i++) {
+            final Entry entry = edge.get(i);
+            int y = entry.desiredY;
+            if (i > 0) {
+                final Entry below = edge.get(i - 1);
+                y = Math.max(y, positions[i - 1] + below.height + mSpacing);
+            }
+            positions[i] = y;
+        }
+        // 从上往下: 超出上端时往下推
+        for (int i = size - 1; i >= 0; i--) {
+            final Entry entry = edge.get(i);
+            int y = Math.min(positions[i], entry.maxY);
+            if (i < size - 1) {
+                y = Math.min(y, positions[i + 1] - entry.height - mSpacing);
+            }
+            positions[i] = Math.max(y, entry.minY);
+        }
+        for (int i = 0; i < size; i++) {
+            final Entry entry = edge.get(i);
+            final boolean isMoved = entry.resolvedY != positions[i];
+            entry.resolvedY = positions[i];
+            if (isMoved && entry != placed) {
+                entry.view.moveToStackedPosition(entry.resolvedY);
+            }
+        }
+    }
+
+    /**
+     * @return bubbles on the edge(null for EDGE_NONE)
+     */
+    private ArrayList<Entry> edgeOf(int edge) {
+        if (edge == EDGE_LEFT) {
+            return mLeftEdge;
+        }
+        if (edge == EDGE_RIGHT) {
+            return mRightEdge;
+        }
+        return null;
+    }
+
+    /**
+     * Binary search of the insertion index(after the bubbles with the same desiredY).
+     */
+    private static int insertionIndex(ArrayList<Entry> edge, int desiredY) {
+        int low = 0;
+        int high = edge.size();
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (edge.get(mid).desiredY <= desiredY) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
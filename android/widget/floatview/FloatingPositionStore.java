@@ -0,0 +1,308 @@
+/**
+ * Copyright 2015 RECRUIT LIFESTYLE CO., LTD.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.taptap.common.widget.floatview;
+
+import android.content.Context;
+import android.graphics.PointF;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.util.AtomicFile;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Persists the resting position of each bubble, so apps do not have to save the coordinates
+ * of {@link FloatingViewListener#onTouchFinished(boolean, int, int)} themselves.
+ * Positions are normalized to the movable range of the bubble(0 = left/bottom, 1 = right/top),
+ * so they survive rotation and size changes.
+ * <p>
+ * The file is read on a background thread when the store is created. Updates stay in memory and are written
+ * by a coalescing writer: the last value of each id wins, and the file is written(and synced) at most once per interval.
+ * <p>
+ * Format(big endian):
+ * <pre>
+ * int MAGIC, byte VERSION, int count, (UTF id, float x, float y) * count
+ * </pre>
+ */
+public class FloatingPositionStore {
+
+    /**
+     * "FVPS"
+     */
+    private static final int MAGIC = 0x46565053;
+
+    /**
+     * Format version
+     */
+    private static final byte VERSION = 1;
+
+    /**
+     * Minimum interval between writes(ms)
+     */
+    private static final long WRITE_INTERVAL_MILLIS = 1000L;
+
+    /**
+     * Writer thread shared by all stores
+     */
+    private static HandlerThread sWriterThread;
+
+    /**
+     * Positions by bubble id(x, y)
+     */
+    private final Map<String, float[]> mPositions;
+
+    /**
+     * File of the store
+     */
+    private final AtomicFile mFile;
+
+    /**
+     * Handler of the writer thread
+     */
+    private final Handler mHandler;
+
+    /**
+     * Released when the file has been read
+     */
+    private final CountDownLatch mLoadLatch;
+
+    /**
+     * Writes the current positions
+     */
+    private final Runnable mWriteRunnable = new Runnable() {
+        @Override
+        public void run() {
+            write();
+        }
+    };
+
+    /**
+     * A write is pending(guarded by mPositions)
+     */
+    private boolean mIsWriteScheduled;
+
+    /**
+     * Constructor
+     *
+     * @param context {@link Context}
+     * @param name    file name in {@link Context#getFilesDir()}
+     */
+    public FloatingPositionStore(Context context, String name) {
+        mPositions = new HashMap<>();
+        mFile = new AtomicFile(new File(context.getFilesDir(), name));
+        mHandler = new Handler(getWriterThread().getLooper());
+        mLoadLatch = new CountDownLatch(1);
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                read();
+                mLoadLatch.countDown();
+            }
+        });
+    }
+
+    /**
+     * Get the writer thread(started on first use).
+     */
+    private static synchronized HandlerThread getWriterThread() {
+        if (sWriterThread == null) {
+            sWriterThread = new HandlerThread("FloatingPositionStore", Process.THREAD_PRIORITY_BACKGROUND);
+            sWriterThread.start();
+        }
+        return sWriterThread;
+    }
+
+    /**
+     * Get the stored position of a bubble. Waits for the file to be read if necessary.
+     *
+     * @param id       bubble id
+     * @param outPoint normalized position
+     * @return true if a position is stored
+     */
+    public boolean get(String id, PointF outPoint) {
+        awaitLoaded();
+        synchronized (mPositions) {
+            final float[] position = mPositions.get(id);
+            if (position == null) {
+                return false;
+            }
+            outPoint.set(position[0], position[1]);
+            return true;
+        }
+    }
+
+    /**
+     * Store the position of a bubble. The file is written later.
+     *
+     * @param id bubble id
+     * @param x  normalized X coordinate
+     * @param y  normalized Y coordinate
+     */
+    public void put(String id, float x, float y) {
+        awaitLoaded();
+        synchronized (mPositions) {
+            final float[] position = mPositions.get(id);
+            if (position != null && position[0] == x && position[1] == y) {
+                return;
+            }
+            mPositions.put(id, new float[]{x, y});
+            scheduleWriteLocked();
+        }
+    }
+
+    /**
+     * Remove the position of a bubble.
+     *
+     * @param id bubble id
+     */
+    public void remove(String id) {
+        awaitLoaded();
+        synchronized (mPositions) {
+            if (mPositions.remove(id) != null) {
+                scheduleWriteLocked();
+            }
+        }
+    }
+
+    /**
+     * Remove all positions.
+     */
+    public void clear() {
+        awaitLoaded();
+        synchronized (mPositions) {
+            if (!mPositions.isEmpty()) {
+                mPositions.clear();
+                scheduleWriteLocked();
+            }
+        }
+    }
+
+    /**
+     * Write the pending positions now instead of at the end of the interval.
+     */
+    public void flush() {
+        synchronized (mPositions) {
+            if (mIsWriteScheduled) {
+                mHandler.removeCallbacks(mWriteRunnable);
+                mHandler.post(mWriteRunnable);
+            }
+        }
+    }
+
+    /**
+     * Schedule a write unless one is already pending. Must hold mPositions.
+     */
+    private void scheduleWriteLocked() {
+        if (!mIsWriteScheduled) {
+            mIsWriteScheduled = true;
+            mHandler.postDelayed(mWriteRunnable, WRITE_INTERVAL_MILLIS);
+        }
+    }
+
+    /**
+     * Wait until the file has been read.
+     */
+    private void awaitLoaded() {
+        boolean interrupted = false;
+        while (mLoadLatch.getCount() > 0) {
+            try {
+                mLoadLatch.await();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Read the file(writer thread).
+     */
+    private void read() {
+        final FileInputStream fis;
+        try {
+            fis = mFile.openRead();
+        } catch (FileNotFoundException e) {
+            return;
+        }
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(fis));
+        try {
+            if (in.readInt() != MAGIC || in.readByte() != VERSION) {
+                return;
+            }
+            final int count = in.readInt();
+            synchronized (mPositions) {
+                for (int i = 0; i < count; i++) {
+                    final String id = in.readUTF();
+                    mPositions.put(id, new float[]{in.readFloat(), in.readFloat()});
+                }
+            }
+        } catch (IOException e) {
+            // a broken file is ignored, it is replaced by the next write
+        } finally {
+            try {
+                in.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    /**
+     * Write a snapshot of the positions(writer thread).
+     */
+    private void write() {
+        final Map<String, float[]> snapshot;
+        synchronized (mPositions) {
+            mIsWriteScheduled = false;
+            snapshot = new HashMap<>(mPositions);
+        }
+        FileOutputStream fos = null;
+        try {
+            fos = mFile.startWrite();
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeInt(snapshot.size());
+            for (Map.Entry<String, float[]> entry : snapshot.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeFloat(entry.getValue()[0]);
+                out.writeFloat(entry.getValue()[1]);
+            }
+            out.flush();
+            // sync and rename
+            mFile.finishWrite(fos);
+        } catch (IOException e) {
+            if (fos != null) {
+                mFile.failWrite(fos);
+            }
+        }
+    }
+}
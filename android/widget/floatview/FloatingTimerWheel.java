@@ -0,0 +1,245 @@
+/**
+ * Copyright 2015 RECRUIT LIFESTYLE CO., LTD.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.taptap.common.widget.floatview;
+
+import android.os.SystemClock;
+
+/**
+ * 长按等的延迟事件用的时间轮。
+ * 定时器预先生成并反复使用，schedule/cancel都是O(1)，不生成Message。
+ * 由{@link FloatingAnimationTicker}每帧推进，只在有等待中的定时器时注册帧回调。
+ */
+class FloatingTimerWheel implements FloatingAnimationTicker.Animation {
+
+    /**
+     * 一格的时间(ms)
+     */
+    private static final long TICK_MILLIS = 16L;
+
+    /**
+     * 格数(2的幂，一圈大约1秒)
+     */
+    private static final int WHEEL_SIZE = 64;
+
+    /**
+     * 求格子的位置用的掩码
+     */
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+
+    /**
+     * 时间轮中的定时器。
+     */
+    static final class Timer {
+
+        /**
+         * 到期时执行的处理
+         */
+        private final Runnable mAction;
+
+        /**
+         * 到期的时间(SystemClock.uptimeMillis基准)
+         */
+        private long mDeadline;
+
+        /**
+         * 所在的格子(-1时没有等待)
+         */
+        private int mSlot = -1;
+
+        /**
+         * 同一格子的前一个定时器
+         */
+        private Timer mPrev;
+
+        /**
+         * 同一格子的后一个定时器
+         */
+        private Timer mNext;
+
+        /**
+         * 构造器
+         *
+         * @param action 到期时执行的处理
+         */
+        Timer(Runnable action) {
+            mAction = action;
+        }
+
+        /**
+         * 检查是否在等待中。
+         *
+         * @return 等待中时为true
+         */
+        boolean isScheduled() {
+            return mSlot >= 0;
+        }
+    }
+
+    /**
+     * 共享的动画定时器
+     */
+    private final FloatingAnimationTicker mTicker;
+
+    /**
+     * 各格子的定时器(双向链表的开头)
+     */
+    private final Timer[] mSlots;
+
+    /**
+     * 已经处理完的格子的时刻(格数)
+     */
+    private long mCurrentTick;
+
+    /**
+     * 等待中的定时器的数量
+     */
+    private int mSize;
+
+    /**
+     * 构造器
+     *
+     * @param ticker 推进时间轮的定时器
+     */
+    FloatingTimerWheel(FloatingAnimationTicker ticker) {
+        mTicker = ticker;
+        mSlots = new Timer[WHEEL_SIZE];
+    }
+
+    /**
+     * 在指定时间后执行定时器。已经在等待中的情况下重新设定时间。
+     *
+     * @param timer       {@link Timer}
+     * @param delayMillis 延迟时间(ms)
+     */
+    void schedule(Timer timer, long delayMillis) {
+        final long now = SystemClock.uptimeMillis();
+        if (timer.isScheduled()) {
+            unlink(timer);
+        }
+        if (mSize == 0) {
+            mCurrentTick = now / TICK_MILLIS;
+        }
+        timer.mDeadline = now + Math.max(delayMillis, 0);
+        // 放在到期之后的第一个格子里(已经处理完的格子不能用)
+        final long deadlineTick = Math.max((timer.mDeadline + TICK_MILLIS - 1) / TICK_MILLIS, mCurrentTick + 1);
+        link(timer, (int) (deadlineTick & WHEEL_MASK));
+        mTicker.start(this);
+    }
+
+    /**
+     * 取消定时器。没有等待中的情况下什么都不做。
+     *
+     * @param timer {@link Timer}
+     */
+    void cancel(Timer timer) {
+        if (!timer.isScheduled()) {
+            return;
+        }
+        unlink(timer);
+        if (mSize == 0) {
+            mTicker.stop(this);
+        }
+    }
+
+    /**
+     * 取消所有的定时器。
+     */
+    void cancelAll() {
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            while (mSlots[i] != null) {
+                unlink(mSlots[i]);
+            }
+        }
+        mTicker.stop(this);
+    }
+
+    /**
+     * 推进到帧的时间，执行到期的定时器。
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean onTick(long frameTimeMillis) {
+        final long targetTick = frameTimeMillis / TICK_MILLIS;
+        // 间隔超过一圈时每个格子只看一次
+        if (targetTick - mCurrentTick > WHEEL_SIZE) {
+            mCurrentTick = targetTick - WHEEL_SIZE;
+        }
+        while (mCurrentTick < targetTick && mSize > 0) {
+            // 先推进时刻，处理中重新设定的定时器不会放进正在处理的格子
+            mCurrentTick++;
+            expireSlot((int) (mCurrentTick & WHEEL_MASK), frameTimeMillis);
+        }
+        mCurrentTick = Math.max(mCurrentTick, targetTick);
+        return mSize > 0;
+    }
+
+    /**
+     * 执行格子中到期的定时器。还没到期的(下一圈以后的)留在格子里。
+     *
+     * @param slot            格子
+     * @param frameTimeMillis 帧的时间
+     */
+    private void expireSlot(int slot, long frameTimeMillis) {
+        Timer timer = mSlots[slot];
+        while (timer != null) {
+            final Timer next = timer.mNext;
+            if (timer.mDeadline <= frameTimeMillis) {
+                unlink(timer);
+                timer.mAction.run();
+                // 处理中取消了下一个定时器的话从头开始
+                if (next != null && next.mSlot != slot) {
+                    timer = mSlots[slot];
+                    continue;
+                }
+            }
+            timer = next;
+        }
+    }
+
+    /**
+     * 把定时器加到格子的开头。
+     */
+    private void link(Timer timer, int slot) {
+        final Timer head = mSlots[slot];
+        timer.mSlot = slot;
+        timer.mPrev = null;
+        timer.mNext = head;
+        if (head != null) {
+            head.mPrev = timer;
+        }
+        mSlots[slot] = timer;
+        mSize++;
+    }
+
+    /**
+     * 把定时器从格子中取下。
+     */
+    private void unlink(Timer timer) {
+        if (timer.mPrev != null) {
+            timer.mPrev.mNext = timer.mNext;
+        } else {
+            mSlots[timer.mSlot] = timer.mNext;
+        }
+        if (timer.mNext != null) {
+            timer.mNext.mPrev = timer.mPrev;
+        }
+        timer.mPrev = null;
+        timer.mNext = null;
+        timer.mSlot = -1;
+        mSize--;
+    }
+}
@@ -22,6 +22,7 @@ import android.content.Context;
 import android.content.res.Configuration;
 import android.content.res.Resources;
 import android.graphics.PixelFormat;
+import android.graphics.Point;
 import android.graphics.Rect;
 import android.os.Build;
 import android.os.Handler;
@@ -32,7 +33,6 @@ import android.view.Gravity;
 import android.view.KeyCharacterMap;
 import android.view.KeyEvent;
 import android.view.MotionEvent;
-import android.view.VelocityTracker;
 import android.view.View;
 import android.view.ViewConfiguration;
 import android.view.ViewGroup;
@@ -179,15 +179,25 @@ class FloatingView extends FrameLayout implements ViewTreeObserver.OnPreDrawList
      */
     private final WindowManager mWindowManager;
 
+    /**
+     * 显示器的状态缓存
+     */
+    private final FloatingDisplayState mDisplayState;
+
     /**
      * LayoutParams
      */
     private final WindowManager.LayoutParams mParams;
 
     /**
-     * VelocityTracker
+     * Touch samples of the current gesture(used for velocity and prediction)
      */
-    private VelocityTracker mVelocityTracker;
+    private final TouchSampleBuffer mTouchSamples;
+
+    /**
+     * True while the velocity of the touch operation is tracked
+     */
+    private boolean mIsVelocityTracking;
 
     /**
      * {@link ViewConfiguration}
@@ -277,6 +287,31 @@ class FloatingView extends FrameLayout implements ViewTreeObserver.OnPreDrawList
      */
     private boolean mAnimateInitialMove;
 
+    /**
+     * 粘贴前已经测量并确定了初始位置的标志
+     */
+    private boolean mIsPreMeasured;
+
+    /**
+     * 保存的初始位置(在移动范围中的比例，NaN时没有)
+     */
+    private float mInitNormalizedX = Float.NaN;
+
+    /**
+     * 保存的初始位置(在移动范围中的比例，NaN时没有)
+     */
+    private float mInitNormalizedY = Float.NaN;
+
+    /**
+     * 保存静止位置的Store(null时不保存)
+     */
+    private FloatingPositionStore mPositionStore;
+
+    /**
+     * 在Store中的ID
+     */
+    private String mPositionId;
+
     /**
      * status bar's height
      */
@@ -329,6 +364,16 @@ class FloatingView extends FrameLayout implements ViewTreeObserver.OnPreDrawList
      */
     private ValueAnimator mMoveEdgeAnimator;
 
+    /**
+     * X坐标的物理动画(Spring或Fling)
+     */
+    private DynamicAnimation<?> mPhysicsAnimationX;
+
+    /**
+     * Y坐标的物理动画(Spring或Fling)
+     */
+    private DynamicAnimation<?> mPhysicsAnimationY;
+
     /**
      * Interpolator
      */
@@ -360,9 +405,14 @@ class FloatingView extends FrameLayout implements ViewTreeObserver.OnPreDrawList
     private final FloatingAnimationHandler mAnimationHandler;
 
     /**
-     * 判断长按的处理程序
+     * 延迟事件的时间轮
+     */
+    private final FloatingTimerWheel mTimerWheel;
+
+    /**
+     * 判断长按的定时器
      */
-    private final LongPressHandler mLongPressHandler;
+    private final FloatingTimerWheel.Timer mLongPressTimer;
 
     /**
      * 屏幕边缘的边距
@@ -404,6 +454,97 @@ class FloatingView extends FrameLayout implements ViewTreeObserver.OnPreDrawList
      */
     private final Rect mSafeInsetRect;
 
+    /**
+     * Drag metrics recorder(null if disabled)
+     */
+    private FloatingViewMetrics mMetricsRecorder;
+
+    /**
+     * Gesture trace recorder(null if disabled)
+     */
+    private GestureTraceRecorder mTraceRecorder;
+
+    /**
+     * Event time of the last touch event that moved the view
+     */
+    private long mLastTouchEventTime;
+
+    /**
+     * True if the layout for the last touch event has not been updated yet
+     */
+    private boolean mIsTouchLayoutPending;
+
+    /**
+     * Touch position predictor
+     */
+    private final TouchPredictor mTouchPredictor;
+
+    /**
+     * How far ahead the touch position is predicted(ms, 0 is disabled)
+     */
+    private long mTouchPredictionMillis;
+
+    /**
+     * Rasterize the content once while dragging
+     */
+    private boolean mIsDragSnapshotEnabled;
+
+    /**
+     * Layer types of the children before the drag snapshot(null if no snapshot is active)
+     */
+    private int[] mSnapshotLayerTypes;
+
+    /**
+     * Visibility before suspension(-1 if not suspended)
+     */
+    private int mSuspendedVisibility = -1;
+
+    /**
+     * Shared overlay window hosting this view(null if this view has its own window)
+     */
+    private SharedOverlayView mSharedOverlay;
+
+    /**
+     * X coordinate where the view comes to rest after the current move
+     */
+    private int mRestingPositionX;
+
+    /**
+     * Y coordinate where the view comes to rest after the current move
+     */
+    private int mRestingPositionY;
+
+    /**
+     * Resting X position as a fraction of the PositionLimitRect(0 = left edge, 1 = right edge).
+     * Only a new goal changes it, so rotations and resizes never accumulate rounding errors.
+     */
+    private float mRestingNormalizedX;
+
+    /**
+     * Resting Y position as a fraction of the PositionLimitRect(0 = bottom edge, 1 = top edge)
+     */
+    private float mRestingNormalizedY;
+
+    /**
+     * Applies mParams on the next frame, together with the other FloatingViews
+     */
+    private final FloatingTimerWheel.Timer mLayoutUpdateTimer;
+
+    /**
+     * Snap targets of the manager(null if not used)
+     */
+    private FloatingDockingEngine mDockingEngine;
+
+    /**
+     * Snap target found on release
+     */
+    private final Point mDockPoint = new Point();
+
+    /**
+     * Stacking of the bubbles on the edges(null if not used)
+     */
+    private FloatingEdgeLayout mEdgeLayout;
+
     static {
         if (Build.VERSION.SDK_INT <= Build.VERSION_CODES.N_MR1) {
             OVERLAY_TYPE = WindowManager.LayoutParams.TYPE_PRIORITY_PHONE;
@@ -415,14 +556,17 @@ class FloatingView extends FrameLayout implements ViewTreeObserver.OnPreDrawList
     /**
      * 构造函数
      *
-     * @param context {@link Context}
+     * @param context      {@link Context}
+     * @param ticker       {@link FloatingAnimationTicker}
+     * @param displayState {@link FloatingDisplayState}
      */
-    FloatingView(final Context context) {
+    FloatingView(final Context context, FloatingAnimationTicker ticker, FloatingDisplayState displayState) {
         super(context);
         mWindowManager = (WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
+        mDisplayState = displayState;
         mParams = new WindowManager.LayoutParams();
         mMetrics = new DisplayMetrics();
-        mWindowManager.getDefaultDisplay().getMetrics(mMetrics);
+        mDisplayState.getMetrics(mMetrics);
         mParams.width = ViewGroup.LayoutParams.WRAP_CONTENT;
         mParams.height = ViewGroup.LayoutParams.WRAP_CONTENT;
         mParams.type = OVERLAY_TYPE;
@@ -433,14 +577,18 @@ class FloatingView extends FrameLayout implements ViewTreeObserver.OnPreDrawList
         mParams.format = PixelFormat.TRANSLUCENT;
         // 设左下坐标为0
         mParams.gravity = Gravity.LEFT | Gravity.BOTTOM;
-        mAnimationHandler = new FloatingAnimationHandler(this);
-        mLongPressHandler = new LongPressHandler(this);
+        mAnimationHandler = new FloatingAnimationHandler(this, ticker);
+        mTimerWheel = ticker.getTimerWheel();
+        mLongPressTimer = new FloatingTimerWheel.Timer(new LongPressAction(this));
+        mLayoutUpdateTimer = new FloatingTimerWheel.Timer(new LayoutUpdateAction(this));
+        mTouchPredictor = new TouchPredictor();
+        mTouchSamples = new TouchSampleBuffer();
         mMoveEdgeInterpolator = new OvershootInterpolator(MOVE_TO_EDGE_OVERSHOOT_TENSION);
         mMoveDirection = FloatingViewManager.MOVE_DIRECTION_DEFAULT;
         mUsePhysics = false;
         final Resources resources = context.getResources();
         mIsTablet = (resources.getConfiguration().screenLayout & Configuration.SCREENLAYOUT_SIZE_MASK) >= Configuration.SCREENLAYOUT_SIZE_LARGE;
-        mRotation = mWindowManager.getDefaultDisplay().getRotation();
+        mRotation = mDisplayState.getRotation();
 
         mMoveLimitRect = new Rect();
         mPositionLimitRect = new Rect();
@@ -481,7 +629,7 @@ class FloatingView extends FrameLayout implements ViewTreeObserver.OnPreDrawList
     private boolean hasSoftNavigationBar() {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
             final DisplayMetrics realDisplayMetrics = new DisplayMetrics();
-            mWindowManager.getDefaultDisplay().getRealMetrics(realDisplayMetrics);
+            mDisplayState.getRealMetrics(realDisplayMetrics);
             return realDisplayMetrics.heightPixels > mMetrics.heightPixels || realDisplayMetrics.widthPixels > mMetrics.widthPixels;
         }
 
@@ -528,16 +676,40 @@ class FloatingView extends FrameLayout implements ViewTreeObserver.OnPreDrawList
     @Override
     protected void onConfigurationChanged(Configuration newConfig) {
         super.onConfigurationChanged(newConfig);
+        // DisplayListener的通知可能晚于这里，所以同步刷新
+        mDisplayState.refresh();
         updateViewConfiguration();
         refreshLimitRect();
     }
 
+    /**
+     * 显示器的状态变化时调整布局(DisplayListener的通知可能晚于onConfigurationChanged)。
+     */
+    void onDisplayChanged() {
+        refreshLimitRect();
+    }
+
     /**
      * 设置初始绘图时的坐标。
      */
     @Override
     public boolean onPreDraw() {
         getViewTreeObserver().removeOnPreDrawListener(this);
+        // 已经在初始位置粘贴的情况下只开始初始动画(不再updateViewLayout)
+        if (mIsPreMeasured) {
+            if (mMoveDirection != FloatingViewManager.MOVE_DIRECTION_NONE) {
+                mIsInitialAnimationRunning = true;
+                if (mAnimateInitialMove) {
+                    moveToEdge(mInitX, mInitY, true);
+                }
+            }
+            // 共享窗口的情况下反映到translationX/Y(没有IPC)
+            if (mSharedOverlay != null) {
+                updateViewLayout();
+            }
+            mIsDraggable = true;
+            return true;
+        }
         // 如果为X坐标设置了初始值，则输入默认值（不考虑边距）
         if (mInitX == DEFAULT_X) {
             mInitX = 0;
@@ -564,6 +736,49 @@ class FloatingView extends FrameLayout implements ViewTreeObserver.OnPreDrawList
         return true;
     }
 
+    /**
+     * 粘贴到window之前在屏幕外测量，确定移动范围和初始位置。
+     * 之后以最终的位置粘贴window，onPreDraw中不需要再次updateViewLayout。
+     */
+    void preMeasure() {
+        mDisplayState.getMetrics(mMetrics);
+        final int widthMeasureSpec = MeasureSpec.makeMeasureSpec(mMetrics.widthPixels, MeasureSpec.AT_MOST);
+        final int heightMeasureSpec = MeasureSpec.makeMeasureSpec(mMetrics.heightPixels, MeasureSpec.AT_MOST);
+        measure(widthMeasureSpec, heightMeasureSpec);
+        // 移动范围只需要测量的大小
+        updateLimitRect();
+
+        // 保存的位置优先于指定的坐标
+        if (!Float.isNaN(mInitNormalizedX)) {
+            mInitX = resolveNormalized(mPositionLimitRect.left, mPositionLimitRect.right, mInitNormalizedX);
+            mInitY = resolveNormalized(mPositionLimitRect.top, mPositionLimitRect.bottom, mInitNormalizedY);
+        }
+        if (mInitX == DEFAULT_X) {
+            mInitX = 0;
+        }
+        if (mInitY == DEFAULT_Y) {
+            mInitY = mMetrics.heightPixels - mStatusBarHeight - getMeasuredHeight();
+        }
+        mParams.x = mInitX;
+        mParams.y = mInitY;
+        // 第一次moveTo之前的屏幕变化(onSizeChanged、onUpdateSystemLayout)也保持初始位置
+        mRestingPositionX = mInitX;
+        mRestingPositionY = mInitY;
+        mRestingNormalizedX = normalize(mPositionLimitRect.left, mPositionLimitRect.right, mInitX);
+        mRestingNormalizedY = normalize(mPositionLimitRect.top, mPositionLimitRect.bottom, mInitY);
+
+        // 布局后getWidth()也有效(粘贴后的布局大小不变，不会再调用onSizeChanged)
+        layout(0, 0, getMeasuredWidth(), getMeasuredHeight());
+
+        // 没有粘贴的状态下moveTo只更新mParams
+        if (mMoveDirection == FloatingViewManager.MOVE_DIRECTION_NONE) {
+            moveTo(mInitX, mInitY, mInitX, mInitY, false);
+        } else if (!mAnimateInitialMove) {
+            moveToEdge(mInitX, mInitY, false);
+        }
+        mIsPreMeasured = true;
+    }
+
     /**
      * Called when the layout of the system has changed.
      *
@@ -650,7 +865,7 @@ class FloatingView extends FrameLayout implements ViewTreeObserver.OnPreDrawList
         // auto hide navigation bar(Galaxy S8, S9 and so on.)
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
             final DisplayMetrics realDisplayMetrics = new DisplayMetrics();
-            mWindowManager.getDefaultDisplay().getRealMetrics(realDisplayMetrics);
+            mDisplayState.getRealMetrics(realDisplayMetrics);
             currentNavigationBarHeight = realDisplayMetrics.heightPixels - windowRect.bottom;
             currentNavigationBarWidth = realDisplayMetrics.widthPixels - mMetrics.widthPixels;
             navigationBarVerticalDiff = mBaseNavigationBarHeight - currentNavigationBarHeight;
@@ -731,23 +946,11 @@ class FloatingView extends FrameLayout implements ViewTreeObserver.OnPreDrawList
     private void refreshLimitRect() {
         cancelAnimation();
 
-        // 保存以前的屏幕坐标
-        final int oldPositionLimitWidth = mPositionLimitRect.width();
-        final int oldPositionLimitHeight = mPositionLimitRect.height();
-
         // 切换到新的坐标信息
-        mWindowManager.getDefaultDisplay().getMetrics(mMetrics);
-        final int width = getMeasuredWidth();
-        final int height = getMeasuredHeight();
-        final int newScreenWidth = mMetrics.widthPixels;
-        final int newScreenHeight = mMetrics.heightPixels;
-
-        // 设置移动范围
-        mMoveLimitRect.set(-width, -height * 2, newScreenWidth + width + mNavigationBarHorizontalOffset, newScreenHeight + height + mNavigationBarVerticalOffset);
-        mPositionLimitRect.set(-mOverMargin, 0, newScreenWidth - width + mOverMargin + mNavigationBarHorizontalOffset, newScreenHeight - mStatusBarHeight - height + mNavigationBarVerticalOffset);
+        updateLimitRect();
 
         // Initial animation stop when the device rotates
-        final int newRotation = mWindowManager.getDefaultDisplay().getRotation();
+        final int newRotation = mDisplayState.getRotation();
         if (mAnimateInitialMove && mRotation != newRotation) {
             mIsInitialAnimationRunning = false;
         }
@@ -760,16 +963,71 @@ class FloatingView extends FrameLayout implements ViewTreeObserver.OnPreDrawList
             if (mIsMoveAccept) {
                 moveToEdge(mParams.x, mParams.y, false);
             } else {
-                final int newX = (int) (mParams.x * mPositionLimitRect.width() / (float) oldPositionLimitWidth + 0.5f);
-                final int goalPositionX = Math.min(Math.max(mPositionLimitRect.left, newX), mPositionLimitRect.right);
-                final int newY = (int) (mParams.y * mPositionLimitRect.height() / (float) oldPositionLimitHeight + 0.5f);
-                final int goalPositionY = Math.min(Math.max(mPositionLimitRect.top, newY), mPositionLimitRect.bottom);
-                moveTo(mParams.x, mParams.y, goalPositionX, goalPositionY, false);
+                // 从保持的比例求出新的位置(不使用旧的坐标，不会累积误差)
+                final int goalPositionX = resolveNormalized(mPositionLimitRect.left, mPositionLimitRect.right, mRestingNormalizedX);
+                final int goalPositionY = resolveNormalized(mPositionLimitRect.top, mPositionLimitRect.bottom, mRestingNormalizedY);
+                mRestingPositionX = goalPositionX;
+                mRestingPositionY = goalPositionY;
+                if (mSharedOverlay != null) {
+                    mSharedOverlay.invalidateTouchableRegion();
+                }
+                if (mParams.x != goalPositionX || mParams.y != goalPositionY) {
+                    mParams.x = goalPositionX;
+                    mParams.y = goalPositionY;
+                    // 一次屏幕变化会多次调用(onConfigurationChanged、onSizeChanged、onUpdateSystemLayout)，
+                    // 在下一帧和其他FloatingView一起只更新一次
+                    mTimerWheel.schedule(mLayoutUpdateTimer, 0);
+                }
             }
         }
         mRotation = newRotation;
     }
 
+    /**
+     * Convert a coordinate into a fraction of the range [min, max].
+     *
+     * @param min   minimum coordinate
+     * @param max   maximum coordinate
+     * @param value coordinate
+     * @return fraction(0 at min, 1 at max)
+     */
+    static float normalize(int min, int max, int value) {
+        if (max <= min) {
+            return 0;
+        }
+        return Math.min(Math.max((value - min) / (float) (max - min), 0f), 1f);
+    }
+
+    /**
+     * Convert a fraction back into a coordinate of the range [min, max]. The edges map exactly to min and max.
+     *
+     * @param min        minimum coordinate
+     * @param max        maximum coordinate
+     * @param normalized fraction(0 at min, 1 at max)
+     * @return coordinate
+     */
+    static int resolveNormalized(int min, int max, float normalized) {
+        if (max <= min) {
+            return min;
+        }
+        return min + Math.round(normalized * (max - min));
+    }
+
+    /**
+     * Update the PositionLimitRect and MoveLimitRect from the current screen size(without moving).
+     */
+    private void updateLimitRect() {
+        mDisplayState.getMetrics(mMetrics);
+        final int width = getMeasuredWidth();
+        final int height = getMeasuredHeight();
+        final int newScreenWidth = mMetrics.widthPixels;
+        final int newScreenHeight = mMetrics.heightPixels;
+
+        // 设置移动范围
+        mMoveLimitRect.set(-width, -height * 2, newScreenWidth + width + mNavigationBarHorizontalOffset, newScreenHeight + height + mNavigationBarVerticalOffset);
+        mPositionLimitRect.set(-mOverMargin, 0, newScreenWidth - width + mOverMargin + mNavigationBarHorizontalOffset, newScreenHeight - mStatusBarHeight - height + mNavigationBarVerticalOffset);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -778,9 +1036,22 @@ class FloatingView extends FrameLayout implements ViewTreeObserver.OnPreDrawList
         if (mMoveEdgeAnimator != null) {
             mMoveEdgeAnimator.removeAllUpdateListeners();
         }
+        stopDragSnapshot();
+        mTimerWheel.cancel(mLayoutUpdateTimer);
         super.onDetachedFromWindow();
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean dispatchTouchEvent(MotionEvent event) {
+        if (mTraceRecorder != null) {
+            mTraceRecorder.recordTouch(GestureTraceRecorder.SOURCE_FLOATING_VIEW, this, event);
+        }
+        return super.dispatchTouchEvent(event);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -825,6 +1096,7 @@ class FloatingView extends FrameLayout implements ViewTreeObserver.OnPreDrawList
         if (action == MotionEvent.ACTION_DOWN) {
             // 取消动画
             cancelAnimation();
+            startDragSnapshot();
             mScreenTouchDownX = mScreenTouchX;
             mScreenTouchDownY = mScreenTouchY;
             mLocalTouchX = event.getX();
@@ -832,26 +1104,25 @@ class FloatingView extends FrameLayout implements ViewTreeObserver.OnPreDrawList
             mIsMoveAccept = false;
             setScale(SCALE_PRESSED);
 
-            if (mVelocityTracker == null) {
-                // Retrieve a new VelocityTracker object to watch the velocity of a motion.
-                mVelocityTracker = VelocityTracker.obtain();
-            } else {
-                // Reset the velocity tracker back to its initial state.
-                mVelocityTracker.clear();
+            // Reset the touch samples back to its initial state.
+            mTouchSamples.clear();
+            mIsVelocityTracking = true;
+
+            if (mMetricsRecorder != null) {
+                mMetricsRecorder.onGestureStart();
             }
 
             // 开始触摸跟踪动画
             mAnimationHandler.updateTouchPosition(getXByTouch(), getYByTouch());
-            mAnimationHandler.removeMessages(FloatingAnimationHandler.ANIMATION_IN_TOUCH);
+            mAnimationHandler.cancelAnimation(FloatingAnimationHandler.ANIMATION_IN_TOUCH);
             mAnimationHandler.sendAnimationMessage(FloatingAnimationHandler.ANIMATION_IN_TOUCH);
             // 开始长按判断
-            mLongPressHandler.removeMessages(LongPressHandler.LONG_PRESSED);
-            mLongPressHandler.sendEmptyMessageDelayed(LongPressHandler.LONG_PRESSED, LONG_PRESS_TIMEOUT);
+            mTimerWheel.schedule(mLongPressTimer, LONG_PRESS_TIMEOUT);
             // 通过的保持时间 确定冲压过程
             // 防止在按下后更改 mIsDraggable 或 getVisibility () 标志时处理 MOVE 等
             mTouchDownTime = event.getDownTime();
-            // compute offset and restore
-            addMovement(event);
+            // add all samples of the event
+            mTouchSamples.addMovement(event);
             mIsInitialAnimationRunning = false;
         }
         // 移動
@@ -859,46 +1130,53 @@ class FloatingView extends FrameLayout implements ViewTreeObserver.OnPreDrawList
             // 移动判断时，松开长按
             if (mIsMoveAccept) {
                 mIsLongPressed = false;
-                mLongPressHandler.removeMessages(LongPressHandler.LONG_PRESSED);
+                mTimerWheel.cancel(mLongPressTimer);
             }
             // 如果不执行压制过程，则不会进行处理。
             if (mTouchDownTime != event.getDownTime()) {
                 return !isOnInterceptTouchEvent;
             }
+            // add all samples(including historical samples) of the event
+            mTouchSamples.addMovement(event);
             // 当移动未被接受且 X 和 Y 轴都小于阈值时
             if (!mIsMoveAccept && Math.abs(mScreenTouchX - mScreenTouchDownX) < mMoveThreshold && Math.abs(mScreenTouchY - mScreenTouchDownY) < mMoveThreshold) {
                 return !isOnInterceptTouchEvent;
             }
             mIsMoveAccept = true;
-            mAnimationHandler.updateTouchPosition(getXByTouch(), getYByTouch());
-            // compute offset and restore
-            addMovement(event);
+            mLastTouchEventTime = event.getEventTime();
+            mIsTouchLayoutPending = true;
+            if (mTouchPredictionMillis > 0) {
+                // 跟随预测的位置以抵消延迟
+                mTouchPredictor.predict(mTouchSamples, mTouchPredictionMillis);
+                mAnimationHandler.updateTouchPosition(getXByTouch(mTouchPredictor.getPredictedX()), getYByTouch(mTouchPredictor.getPredictedY()));
+            } else {
+                mAnimationHandler.updateTouchPosition(getXByTouch(), getYByTouch());
+            }
         }
         // 上推，取消
         else if (action == MotionEvent.ACTION_UP || action == MotionEvent.ACTION_CANCEL) {
-            // compute velocity tracker
-            if (mVelocityTracker != null) {
-                mVelocityTracker.computeCurrentVelocity(CURRENT_VELOCITY_UNITS);
+            // compute velocity
+            if (mIsVelocityTracking) {
+                mTouchSamples.computeCurrentVelocity(CURRENT_VELOCITY_UNITS, Float.MAX_VALUE, event.getEventTime());
             }
 
             // 暂时保持长按状态等待判断
             final boolean tmpIsLongPressed = mIsLongPressed;
             // 释放长按
             mIsLongPressed = false;
-            mLongPressHandler.removeMessages(LongPressHandler.LONG_PRESSED);
+            mTimerWheel.cancel(mLongPressTimer);
             // 如果不执行压制过程，则不会进行处理。
             if (mTouchDownTime != event.getDownTime()) {
                 return true;
             }
             // 移除动画
-            mAnimationHandler.removeMessages(FloatingAnimationHandler.ANIMATION_IN_TOUCH);
+            mAnimationHandler.cancelAnimation(FloatingAnimationHandler.ANIMATION_IN_TOUCH);
             // 恢复放大倍数
             setScale(SCALE_NORMAL);
 
-            // destroy VelocityTracker (#103)
-            if (!mIsMoveAccept && mVelocityTracker != null) {
-                mVelocityTracker.recycle();
-                mVelocityTracker = null;
+            // stop velocity tracking (#103)
+            if (!mIsMoveAccept) {
+                mIsVelocityTracking = false;
             }
 
             // When ACTION_UP is done (when not pressed or moved)
@@ -918,26 +1196,20 @@ class FloatingView extends FrameLayout implements ViewTreeObserver.OnPreDrawList
         if (isWaitForMoveToEdge && mAnimationHandler.getState() != STATE_FINISHING) {
             // include device rotation
             moveToEdge(true);
-            if (mVelocityTracker != null) {
-                mVelocityTracker.recycle();
-                mVelocityTracker = null;
-            }
+            mIsVelocityTracking = false;
         }
 
-        return !isOnInterceptTouchEvent || mIsMoveAccept;
-    }
+        if (action == MotionEvent.ACTION_UP || action == MotionEvent.ACTION_CANCEL) {
+            stopDragSnapshot();
+        }
 
-    /**
-     * Call addMovement and restore MotionEvent coordinate
-     *
-     * @param event {@link MotionEvent}
-     */
-    private void addMovement(@NonNull MotionEvent event) {
-        final float deltaX = event.getRawX() - event.getX();
-        final float deltaY = event.getRawY() - event.getY();
-        event.offsetLocation(deltaX, deltaY);
-        mVelocityTracker.addMovement(event);
-        event.offsetLocation(-deltaX, -deltaY);
+        // Report drag metrics
+        if (mMetricsRecorder != null && (action == MotionEvent.ACTION_UP || action == MotionEvent.ACTION_CANCEL)) {
+            mIsTouchLayoutPending = false;
+            mMetricsRecorder.onGestureEnd();
+        }
+
+        return !isOnInterceptTouchEvent || mIsMoveAccept;
     }
 
     /**
@@ -965,10 +1237,14 @@ class FloatingView extends FrameLayout implements ViewTreeObserver.OnPreDrawList
             if (mIsMoveAccept) {
                 moveToEdge(false);
             }
-            mAnimationHandler.removeMessages(FloatingAnimationHandler.ANIMATION_IN_TOUCH);
-            mLongPressHandler.removeMessages(LongPressHandler.LONG_PRESSED);
+            mAnimationHandler.cancelAnimation(FloatingAnimationHandler.ANIMATION_IN_TOUCH);
+            mTimerWheel.cancel(mLongPressTimer);
+            stopDragSnapshot();
         }
         super.setVisibility(visibility);
+        if (mSharedOverlay != null) {
+            mSharedOverlay.invalidateTouchableRegion();
+        }
     }
 
     /**
@@ -998,10 +1274,55 @@ class FloatingView extends FrameLayout implements ViewTreeObserver.OnPreDrawList
      * @param withAnimation 如果你想动画则为true，如果你不想动画则为false
      */
     private void moveToEdge(int startX, int startY, boolean withAnimation) {
-        // 移动到指定坐标
-        final int goalPositionX = getGoalPositionX(startX, startY);
-        final int goalPositionY = getGoalPositionY(startX, startY);
-        moveTo(startX, startY, goalPositionX, goalPositionY, withAnimation);
+        int goalPositionX;
+        int goalPositionY;
+        boolean isDock = false;
+        // 附近有吸附点的情况下移动到吸附点(和Fling相同的速度和摩擦预测放开后的落点)
+        final float velocityX = mIsVelocityTracking ? getFlingVelocityX() : 0;
+        final float velocityY = mIsVelocityTracking ? getFlingVelocityY() : 0;
+        if (mDockingEngine != null && mDockingEngine.findTarget(startX, startY, velocityX, velocityY,
+                ANIMATION_FLING_X_FRICTION, ANIMATION_FLING_Y_FRICTION, mPositionLimitRect, mDockPoint)) {
+            goalPositionX = mDockPoint.x;
+            goalPositionY = mDockPoint.y;
+            isDock = true;
+        } else {
+            // 移动到指定坐标
+            goalPositionX = getGoalPositionX(startX, startY);
+            goalPositionY = getGoalPositionY(startX, startY);
+        }
+        // 在左右边缘的情况下避开其他FloatingView
+        if (mEdgeLayout != null) {
+            goalPositionX = Math.min(Math.max(mPositionLimitRect.left, goalPositionX), mPositionLimitRect.right);
+            final int edge;
+            if (goalPositionX == mPositionLimitRect.left) {
+                edge = FloatingEdgeLayout.EDGE_LEFT;
+            } else if (goalPositionX == mPositionLimitRect.right) {
+                edge = FloatingEdgeLayout.EDGE_RIGHT;
+            } else {
+                edge = FloatingEdgeLayout.EDGE_NONE;
+            }
+            final int stackedPositionY = mEdgeLayout.place(this, edge, goalPositionY, getMeasuredHeight(), mPositionLimitRect.top, mPositionLimitRect.bottom);
+            // 被推开的情况下Y也一定要移动到目的地
+            if (stackedPositionY != goalPositionY) {
+                goalPositionY = stackedPositionY;
+                isDock = true;
+            }
+        }
+        moveTo(startX, startY, goalPositionX, goalPositionY, withAnimation, isDock);
+    }
+
+    /**
+     * 为了避开同一边缘的其他FloatingView，沿着边缘移动。
+     *
+     * @param goalPositionY 目的地Y坐标
+     */
+    void moveToStackedPosition(int goalPositionY) {
+        // 拖动中的情况下放开时重新决定位置
+        if (mIsMoveAccept) {
+            return;
+        }
+        cancelAnimation();
+        moveTo(mParams.x, mParams.y, mRestingPositionX, goalPositionY, ViewCompat.isAttachedToWindow(this), true);
     }
 
     /**
@@ -1015,15 +1336,48 @@ class FloatingView extends FrameLayout implements ViewTreeObserver.OnPreDrawList
      * @param withAnimation 如果你想动画则为true，如果你不想动画则为false
      */
     private void moveTo(int currentX, int currentY, int goalPositionX, int goalPositionY, boolean withAnimation) {
+        moveTo(currentX, currentY, goalPositionX, goalPositionY, withAnimation, false);
+    }
+
+    /**
+     * 移动到恒定坐标。<br/>
+     * 如果超过屏幕边缘的坐标，会自动移动到屏幕边缘。
+     *
+     * @param currentX      当前 X 坐标（用于动画的起点）
+     * @param currentY      当前 Y 坐标（用于动画的开始）
+     * @param goalPositionX 目的地X坐标
+     * @param goalPositionY 目的地Y坐标
+     * @param withAnimation 如果你想动画则为true，如果你不想动画则为false
+     * @param isDock        移动到吸附点时为true(X、Y两个方向都移动到目的地)
+     */
+    private void moveTo(int currentX, int currentY, int goalPositionX, int goalPositionY, boolean withAnimation, boolean isDock) {
         // 调整使其不从屏幕边缘突出
         goalPositionX = Math.min(Math.max(mPositionLimitRect.left, goalPositionX), mPositionLimitRect.right);
         goalPositionY = Math.min(Math.max(mPositionLimitRect.top, goalPositionY), mPositionLimitRect.bottom);
+        mRestingPositionX = goalPositionX;
+        mRestingPositionY = goalPositionY;
+        mRestingNormalizedX = normalize(mPositionLimitRect.left, mPositionLimitRect.right, goalPositionX);
+        mRestingNormalizedY = normalize(mPositionLimitRect.top, mPositionLimitRect.bottom, goalPositionY);
+        if (mSharedOverlay != null) {
+            mSharedOverlay.invalidateTouchableRegion();
+        }
+        // 保存静止位置(确定初始位置之前不保存)
+        if (mPositionStore != null && mIsPreMeasured) {
+            mPositionStore.put(mPositionId, mRestingNormalizedX, mRestingNormalizedY);
+        }
         // 制作动画时
         if (withAnimation) {
             // Use physics animation
-            final boolean usePhysicsAnimation = mUsePhysics && mVelocityTracker != null && mMoveDirection != FloatingViewManager.MOVE_DIRECTION_NEAREST;
-            if (usePhysicsAnimation) {
-                startPhysicsAnimation(goalPositionX, currentY);
+            final boolean usePhysicsAnimation = isPhysicsMove();
+            if (isDock) {
+                if (mUsePhysics && mIsVelocityTracking) {
+                    startSpringAnimationX(goalPositionX);
+                    startSpringAnimationY(goalPositionY, getFlingVelocityY());
+                } else {
+                    startDockAnimation(currentX, currentY, goalPositionX, goalPositionY);
+                }
+            } else if (usePhysicsAnimation) {
+                startPhysicsAnimation(goalPositionX, goalPositionY);
             } else {
                 startObjectAnimation(currentX, currentY, goalPositionX, goalPositionY);
             }
@@ -1044,17 +1398,20 @@ class FloatingView extends FrameLayout implements ViewTreeObserver.OnPreDrawList
     }
 
     /**
-     * Start Physics-based animation
+     * Start Physics-based animation.
+     * A fling is used only if it comes to rest inside the PositionLimitRect, otherwise a spring carries the bubble
+     * to the goal(instead of the fling stopping abruptly at the bound).
      *
      * @param goalPositionX goal position X coordinate
-     * @param currentY      current Y coordinate
+     * @param goalPositionY goal position Y coordinate
      */
-    private void startPhysicsAnimation(int goalPositionX, int currentY) {
+    private void startPhysicsAnimation(int goalPositionX, int goalPositionY) {
         // start X coordinate animation
         final boolean containsLimitRectWidth = mParams.x < mPositionLimitRect.right && mParams.x > mPositionLimitRect.left;
+        final float velocityX = getFlingVelocityX();
         // If MOVE_DIRECTION_NONE, play fling animation
-        if (mMoveDirection == FloatingViewManager.MOVE_DIRECTION_NONE && containsLimitRectWidth) {
-            final float velocityX = Math.min(Math.max(mVelocityTracker.getXVelocity(), -mMaximumXVelocity), mMaximumXVelocity);
+        if (mMoveDirection == FloatingViewManager.MOVE_DIRECTION_NONE && containsLimitRectWidth
+                && FlingProjection.landsWithin(mParams.x, velocityX, ANIMATION_FLING_X_FRICTION, mPositionLimitRect.left, mPositionLimitRect.right)) {
             startFlingAnimationX(velocityX);
         } else {
             startSpringAnimationX(goalPositionX);
@@ -1062,14 +1419,38 @@ class FloatingView extends FrameLayout implements ViewTreeObserver.OnPreDrawList
 
         // start Y coordinate animation
         final boolean containsLimitRectHeight = mParams.y < mPositionLimitRect.bottom && mParams.y > mPositionLimitRect.top;
-        final float velocityY = -Math.min(Math.max(mVelocityTracker.getYVelocity(), -mMaximumYVelocity), mMaximumYVelocity);
-        if (containsLimitRectHeight) {
+        final float velocityY = getFlingVelocityY();
+        if (containsLimitRectHeight
+                && FlingProjection.landsWithin(mParams.y, velocityY, ANIMATION_FLING_Y_FRICTION, mPositionLimitRect.top, mPositionLimitRect.bottom)) {
             startFlingAnimationY(velocityY);
         } else {
-            startSpringAnimationY(currentY, velocityY);
+            startSpringAnimationY(goalPositionY, velocityY);
         }
     }
 
+    /**
+     * Check if the release is animated with physics(fling and spring).
+     *
+     * @return true if physics-based animations are used
+     */
+    private boolean isPhysicsMove() {
+        return mUsePhysics && mIsVelocityTracking && mMoveDirection != FloatingViewManager.MOVE_DIRECTION_NEAREST;
+    }
+
+    /**
+     * @return X velocity of the fling(px/s)
+     */
+    private float getFlingVelocityX() {
+        return Math.min(Math.max(mTouchSamples.getXVelocity(), -mMaximumXVelocity), mMaximumXVelocity);
+    }
+
+    /**
+     * @return Y velocity of the fling(px/s, upward positive)
+     */
+    private float getFlingVelocityY() {
+        return -Math.min(Math.max(mTouchSamples.getYVelocity(), -mMaximumYVelocity), mMaximumYVelocity);
+    }
+
     /**
      * Start object animation
      *
@@ -1109,6 +1490,31 @@ class FloatingView extends FrameLayout implements ViewTreeObserver.OnPreDrawList
         mMoveEdgeAnimator.start();
     }
 
+    /**
+     * Start object animation to a snap target(both coordinates)
+     *
+     * @param currentX      current X coordinate
+     * @param currentY      current Y coordinate
+     * @param goalPositionX goal position X coordinate
+     * @param goalPositionY goal position Y coordinate
+     */
+    private void startDockAnimation(final int currentX, final int currentY, final int goalPositionX, final int goalPositionY) {
+        mMoveEdgeAnimator = ValueAnimator.ofFloat(0f, 1f);
+        mMoveEdgeAnimator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
+            @Override
+            public void onAnimationUpdate(ValueAnimator animation) {
+                final float fraction = (Float) animation.getAnimatedValue();
+                mParams.x = currentX + Math.round((goalPositionX - currentX) * fraction);
+                mParams.y = currentY + Math.round((goalPositionY - currentY) * fraction);
+                updateViewLayout();
+                updateInitAnimation(animation);
+            }
+        });
+        mMoveEdgeAnimator.setDuration(MOVE_TO_EDGE_DURATION);
+        mMoveEdgeAnimator.setInterpolator(mMoveEdgeInterpolator);
+        mMoveEdgeAnimator.start();
+    }
+
     /**
      * Start spring animation(X coordinate)
      *
@@ -1121,7 +1527,7 @@ class FloatingView extends FrameLayout implements ViewTreeObserver.OnPreDrawList
         springX.setStiffness(ANIMATION_SPRING_X_STIFFNESS);
         // springAnimation
         final SpringAnimation springAnimationX = new SpringAnimation(new FloatValueHolder());
-        springAnimationX.setStartVelocity(mVelocityTracker.getXVelocity());
+        springAnimationX.setStartVelocity(mTouchSamples.getXVelocity());
         springAnimationX.setStartValue(mParams.x);
         springAnimationX.setSpring(springX);
         springAnimationX.setMinimumVisibleChange(DynamicAnimation.MIN_VISIBLE_CHANGE_PIXELS);
@@ -1130,7 +1536,7 @@ class FloatingView extends FrameLayout implements ViewTreeObserver.OnPreDrawList
             public void onAnimationUpdate(DynamicAnimation animation, float value, float velocity) {
                 final int x = Math.round(value);
                 // Not moving, or the touch operation is continuing
-                if (mParams.x == x || mVelocityTracker != null) {
+                if (mParams.x == x || mIsVelocityTracking) {
                     return;
                 }
                 // update x coordinate
@@ -1138,18 +1544,20 @@ class FloatingView extends FrameLayout implements ViewTreeObserver.OnPreDrawList
                 updateViewLayout();
             }
         });
+        cancelPhysicsAnimationX();
+        mPhysicsAnimationX = springAnimationX;
         springAnimationX.start();
     }
 
     /**
      * Start spring animation(Y coordinate)
      *
-     * @param currentY  current Y coordinate
-     * @param velocityY velocity Y coordinate
+     * @param goalPositionY goal position Y coordinate
+     * @param velocityY     velocity Y coordinate
      */
-    private void startSpringAnimationY(int currentY, float velocityY) {
+    private void startSpringAnimationY(int goalPositionY, float velocityY) {
         // Create SpringForce
-        final SpringForce springY = new SpringForce(currentY < mMetrics.heightPixels / 2 ? mPositionLimitRect.top : mPositionLimitRect.bottom);
+        final SpringForce springY = new SpringForce(goalPositionY);
         springY.setDampingRatio(SpringForce.DAMPING_RATIO_LOW_BOUNCY);
         springY.setStiffness(SpringForce.STIFFNESS_LOW);
 
@@ -1164,7 +1572,7 @@ class FloatingView extends FrameLayout implements ViewTreeObserver.OnPreDrawList
             public void onAnimationUpdate(DynamicAnimation animation, float value, float velocity) {
                 final int y = Math.round(value);
                 // Not moving, or the touch operation is continuing
-                if (mParams.y == y || mVelocityTracker != null) {
+                if (mParams.y == y || mIsVelocityTracking) {
                     return;
                 }
                 // update y coordinate
@@ -1172,6 +1580,8 @@ class FloatingView extends FrameLayout implements ViewTreeObserver.OnPreDrawList
                 updateViewLayout();
             }
         });
+        cancelPhysicsAnimationY();
+        mPhysicsAnimationY = springAnimationY;
         springAnimationY.start();
     }
 
@@ -1193,7 +1603,7 @@ class FloatingView extends FrameLayout implements ViewTreeObserver.OnPreDrawList
             public void onAnimationUpdate(DynamicAnimation animation, float value, float velocity) {
                 final int x = Math.round(value);
                 // Not moving, or the touch operation is continuing
-                if (mParams.x == x || mVelocityTracker != null) {
+                if (mParams.x == x || mIsVelocityTracking) {
                     return;
                 }
                 // update y coordinate
@@ -1201,6 +1611,8 @@ class FloatingView extends FrameLayout implements ViewTreeObserver.OnPreDrawList
                 updateViewLayout();
             }
         });
+        cancelPhysicsAnimationX();
+        mPhysicsAnimationX = flingAnimationX;
         flingAnimationX.start();
     }
 
@@ -1222,7 +1634,7 @@ class FloatingView extends FrameLayout implements ViewTreeObserver.OnPreDrawList
             public void onAnimationUpdate(DynamicAnimation animation, float value, float velocity) {
                 final int y = Math.round(value);
                 // Not moving, or the touch operation is continuing
-                if (mParams.y == y || mVelocityTracker != null) {
+                if (mParams.y == y || mIsVelocityTracking) {
                     return;
                 }
                 // update y coordinate
@@ -1230,17 +1642,37 @@ class FloatingView extends FrameLayout implements ViewTreeObserver.OnPreDrawList
                 updateViewLayout();
             }
         });
+        cancelPhysicsAnimationY();
+        mPhysicsAnimationY = flingAnimationY;
         flingAnimationY.start();
     }
 
     /**
      * Check if it is attached to the Window and call WindowManager.updateLayout()
+     * (In the shared overlay window, only translationX/Y is updated)
      */
     private void updateViewLayout() {
         if (!ViewCompat.isAttachedToWindow(this)) {
             return;
         }
-        mWindowManager.updateViewLayout(this, mParams);
+        if (mSharedOverlay != null) {
+            // 左下原点，向上为正
+            setTranslationX(mParams.x);
+            setTranslationY(-mParams.y);
+        } else {
+            mWindowManager.updateViewLayout(this, mParams);
+            if (mMetricsRecorder != null) {
+                mMetricsRecorder.onWindowOperation();
+            }
+        }
+        if (mMetricsRecorder != null) {
+            if (mIsTouchLayoutPending) {
+                mIsTouchLayoutPending = false;
+                // 手指位置与View位置的距离
+                final float lag = (float) Math.hypot(getXByTouch() - mParams.x, getYByTouch() - mParams.y);
+                mMetricsRecorder.onTouchLayout(mLastTouchEventTime, lag);
+            }
+        }
     }
 
     /**
@@ -1286,12 +1718,20 @@ class FloatingView extends FrameLayout implements ViewTreeObserver.OnPreDrawList
                 goalPositionX = isMoveRightEdge ? mPositionLimitRect.right : mPositionLimitRect.left;
             }
         }
+        // Stay where the fling lands
+        else if (mMoveDirection == FloatingViewManager.MOVE_DIRECTION_NONE) {
+            if (isPhysicsMove()) {
+                goalPositionX = Math.round(FlingProjection.project(startX, getFlingVelocityX(), ANIMATION_FLING_X_FRICTION));
+            }
+        }
         // Move in the direction in which it is thrown
         else if (mMoveDirection == FloatingViewManager.MOVE_DIRECTION_THROWN) {
-            if (mVelocityTracker != null && mVelocityTracker.getXVelocity() > mThrowMoveThreshold) {
-                goalPositionX = mPositionLimitRect.right;
-            } else if (mVelocityTracker != null && mVelocityTracker.getXVelocity() < -mThrowMoveThreshold) {
-                goalPositionX = mPositionLimitRect.left;
+            final float velocityX = mIsVelocityTracking ? getFlingVelocityX() : 0;
+            if (Math.abs(velocityX) > mThrowMoveThreshold) {
+                // The edge on the side of the landing point
+                final float landingX = FlingProjection.project(startX, velocityX, ANIMATION_FLING_X_FRICTION);
+                final boolean isMoveRightEdge = landingX > (mPositionLimitRect.left + mPositionLimitRect.right) / 2f;
+                goalPositionX = isMoveRightEdge ? mPositionLimitRect.right : mPositionLimitRect.left;
             } else {
                 final boolean isMoveRightEdge = startX > (mMetrics.widthPixels - getWidth()) / 2;
                 goalPositionX = isMoveRightEdge ? mPositionLimitRect.right : mPositionLimitRect.left;
@@ -1320,6 +1760,14 @@ class FloatingView extends FrameLayout implements ViewTreeObserver.OnPreDrawList
                 goalPositionY = isMoveTopEdge ? mPositionLimitRect.top : mPositionLimitRect.bottom;
             }
         }
+        // The Y coordinate of the physics animation is decided by the fling
+        else if (isPhysicsMove()) {
+            if (startY < mPositionLimitRect.bottom && startY > mPositionLimitRect.top) {
+                goalPositionY = Math.round(FlingProjection.project(startY, getFlingVelocityY(), ANIMATION_FLING_Y_FRICTION));
+            } else {
+                goalPositionY = startY < mMetrics.heightPixels / 2 ? mPositionLimitRect.top : mPositionLimitRect.bottom;
+            }
+        }
 
         return goalPositionY;
     }
@@ -1332,6 +1780,28 @@ class FloatingView extends FrameLayout implements ViewTreeObserver.OnPreDrawList
             mMoveEdgeAnimator.cancel();
             mMoveEdgeAnimator = null;
         }
+        cancelPhysicsAnimationX();
+        cancelPhysicsAnimationY();
+    }
+
+    /**
+     * X坐标的物理动画的取消
+     */
+    private void cancelPhysicsAnimationX() {
+        if (mPhysicsAnimationX != null) {
+            mPhysicsAnimationX.cancel();
+            mPhysicsAnimationX = null;
+        }
+    }
+
+    /**
+     * Y坐标的物理动画的取消
+     */
+    private void cancelPhysicsAnimationY() {
+        if (mPhysicsAnimationY != null) {
+            mPhysicsAnimationY.cancel();
+            mPhysicsAnimationY = null;
+        }
     }
 
     /**
@@ -1409,6 +1879,96 @@ class FloatingView extends FrameLayout implements ViewTreeObserver.OnPreDrawList
         mUsePhysics = usePhysics && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN;
     }
 
+    /**
+     * Set how far ahead the touch position is predicted while dragging.
+     *
+     * @param predictionMillis prediction horizon(ms, 0 is disabled)
+     */
+    void setTouchPredictionMillis(long predictionMillis) {
+        mTouchPredictionMillis = Math.min(Math.max(predictionMillis, 0), TouchPredictor.MAX_HORIZON_MILLIS);
+    }
+
+    /**
+     * Stop all work(animations, long press, touch tracking) and hide the view, keeping its position.
+     */
+    void suspend() {
+        if (mSuspendedVisibility != -1) {
+            return;
+        }
+        mSuspendedVisibility = getVisibility();
+        cancelAnimation();
+        mAnimationHandler.cancelAnimation(FloatingAnimationHandler.ANIMATION_IN_TOUCH);
+        mTimerWheel.cancel(mLongPressTimer);
+        mIsLongPressed = false;
+        mTouchSamples.clear();
+        mIsVelocityTracking = false;
+        mIsTouchLayoutPending = false;
+        stopDragSnapshot();
+        setVisibility(View.GONE);
+    }
+
+    /**
+     * Restore the visibility before {@link #suspend()}.
+     */
+    void resume() {
+        if (mSuspendedVisibility == -1) {
+            return;
+        }
+        final int visibility = mSuspendedVisibility;
+        mSuspendedVisibility = -1;
+        setVisibility(visibility);
+    }
+
+    /**
+     * Rasterize the content once on ACTION_DOWN and draw only that snapshot until ACTION_UP.
+     *
+     * @param enabled true to use the drag snapshot
+     */
+    void setDragSnapshotEnabled(boolean enabled) {
+        mIsDragSnapshotEnabled = enabled;
+        if (!enabled) {
+            stopDragSnapshot();
+        }
+    }
+
+    /**
+     * Put the children on a layer so that the scale and position changes of the drag only composite the snapshot.
+     * The layer is redrawn only when a child invalidates itself.
+     */
+    private void startDragSnapshot() {
+        if (!mIsDragSnapshotEnabled || mSnapshotLayerTypes != null) {
+            return;
+        }
+        // software rendering keeps a bitmap, hardware rendering keeps a texture
+        final int layerType = isHardwareAccelerated() ? View.LAYER_TYPE_HARDWARE : View.LAYER_TYPE_SOFTWARE;
+        final int childCount = getChildCount();
+        mSnapshotLayerTypes = new int[childCount];
+        for (int i = 0; i < childCount; i++) {
+            final View child = getChildAt(i);
+            mSnapshotLayerTypes[i] = child.getLayerType();
+            if (mSnapshotLayerTypes[i] == View.LAYER_TYPE_NONE) {
+                child.setLayerType(layerType, null);
+            }
+        }
+    }
+
+    /**
+     * Restore the layer types of the children.
+     */
+    private void stopDragSnapshot() {
+        if (mSnapshotLayerTypes == null) {
+            return;
+        }
+        final int childCount = Math.min(getChildCount(), mSnapshotLayerTypes.length);
+        for (int i = 0; i < childCount; i++) {
+            final View child = getChildAt(i);
+            if (mSnapshotLayerTypes[i] == View.LAYER_TYPE_NONE) {
+                child.setLayerType(View.LAYER_TYPE_NONE, null);
+            }
+        }
+        mSnapshotLayerTypes = null;
+    }
+
     /**
      * 设置初始坐标。
      *
@@ -1420,6 +1980,46 @@ class FloatingView extends FrameLayout implements ViewTreeObserver.OnPreDrawList
         mInitY = y;
     }
 
+    /**
+     * 设置保存的初始位置(在移动范围中的比例)。优先于{@link #setInitCoords(int, int)}。
+     *
+     * @param x X坐标的比例
+     * @param y Y坐标的比例
+     */
+    void setInitNormalizedCoords(float x, float y) {
+        mInitNormalizedX = x;
+        mInitNormalizedY = y;
+    }
+
+    /**
+     * 设置吸附点。
+     *
+     * @param dockingEngine {@link FloatingDockingEngine}(null时不使用)
+     */
+    void setDockingEngine(FloatingDockingEngine dockingEngine) {
+        mDockingEngine = dockingEngine;
+    }
+
+    /**
+     * 设置边缘的堆叠。
+     *
+     * @param edgeLayout {@link FloatingEdgeLayout}(null时不使用)
+     */
+    void setEdgeLayout(FloatingEdgeLayout edgeLayout) {
+        mEdgeLayout = edgeLayout;
+    }
+
+    /**
+     * 设置保存静止位置的Store。
+     *
+     * @param store {@link FloatingPositionStore}(null时不保存)
+     * @param id    在Store中的ID
+     */
+    void setPositionStore(FloatingPositionStore store, String id) {
+        mPositionStore = store;
+        mPositionId = id;
+    }
+
     /**
      * 设置标志以在初始显示时进行动画处理。
      *
@@ -1440,6 +2040,33 @@ class FloatingView extends FrameLayout implements ViewTreeObserver.OnPreDrawList
         outRect.set(currentX, currentY, currentX + getWidth(), currentY + getHeight());
     }
 
+    /**
+     * Get the rect where the view comes to rest(origin is the bottom left of the screen).
+     *
+     * @param outRect rect
+     */
+    void getRestingRect(Rect outRect) {
+        outRect.set(mRestingPositionX, mRestingPositionY, mRestingPositionX + getWidth(), mRestingPositionY + getHeight());
+    }
+
+    /**
+     * Check if the view is at its resting position(not dragged or animating).
+     *
+     * @return true if at rest
+     */
+    boolean isAtRest() {
+        return mParams.x == mRestingPositionX && mParams.y == mRestingPositionY;
+    }
+
+    /**
+     * Host this view in the shared overlay window.
+     *
+     * @param sharedOverlay {@link SharedOverlayView}(null if this view has its own window)
+     */
+    void setSharedOverlay(SharedOverlayView sharedOverlay) {
+        mSharedOverlay = sharedOverlay;
+    }
+
     /**
      * WindowManager.LayoutParams获取。
      */
@@ -1453,7 +2080,17 @@ class FloatingView extends FrameLayout implements ViewTreeObserver.OnPreDrawList
      * @return FloatingView X 坐标
      */
     private int getXByTouch() {
-        return (int) (mScreenTouchX - mLocalTouchX - mTouchXOffset);
+        return getXByTouch(mScreenTouchX);
+    }
+
+    /**
+     * 根据指定的屏幕X坐标计算的 FloatingView X 坐标
+     *
+     * @param screenTouchX 屏幕X坐标
+     * @return FloatingView X 坐标
+     */
+    private int getXByTouch(float screenTouchX) {
+        return (int) (screenTouchX - mLocalTouchX - mTouchXOffset);
     }
 
     /**
@@ -1462,7 +2099,17 @@ class FloatingView extends FrameLayout implements ViewTreeObserver.OnPreDrawList
      * @return Floating View的Y坐标
      */
     private int getYByTouch() {
-        return (int) (mMetrics.heightPixels + mNavigationBarVerticalOffset - (mScreenTouchY - mLocalTouchY + getHeight() - mTouchYOffset));
+        return getYByTouch(mScreenTouchY);
+    }
+
+    /**
+     * 根据指定的屏幕Y坐标计算出的Floating View的Y坐标
+     *
+     * @param screenTouchY 屏幕Y坐标
+     * @return Floating View的Y坐标
+     */
+    private int getYByTouch(float screenTouchY) {
+        return (int) (mMetrics.heightPixels + mNavigationBarVerticalOffset - (screenTouchY - mLocalTouchY + getHeight() - mTouchYOffset));
     }
 
     /**
@@ -1507,14 +2154,27 @@ class FloatingView extends FrameLayout implements ViewTreeObserver.OnPreDrawList
     }
 
     /**
-     * 控制动画的处理程序。
+     * Set the drag metrics recorder.
+     *
+     * @param recorder {@link FloatingViewMetrics}(null if disabled)
      */
-    static class FloatingAnimationHandler extends Handler {
+    void setMetricsRecorder(FloatingViewMetrics recorder) {
+        mMetricsRecorder = recorder;
+    }
 
-        /**
-         * 刷新动画的毫秒
-         */
-        private static final long ANIMATION_REFRESH_TIME_MILLIS = 10L;
+    /**
+     * Set the gesture trace recorder.
+     *
+     * @param recorder {@link GestureTraceRecorder}(null if disabled)
+     */
+    void setTraceRecorder(GestureTraceRecorder recorder) {
+        mTraceRecorder = recorder;
+    }
+
+    /**
+     * 控制动画的处理程序。
+     */
+    static class FloatingAnimationHandler extends Handler implements FloatingAnimationTicker.Animation {
 
         /**
          * Floating View吸附的拆装时间
@@ -1531,15 +2191,6 @@ class FloatingView extends FrameLayout implements ViewTreeObserver.OnPreDrawList
          */
         private static final int ANIMATION_IN_TOUCH = 1;
 
-        /**
-         * 表示动画开始的常数
-         */
-        private static final int TYPE_FIRST = 1;
-        /**
-         * 表示动画更新的常数
-         */
-        private static final int TYPE_UPDATE = 2;
-
         /**
          * 动画开始的时间
          */
@@ -1595,17 +2246,23 @@ class FloatingView extends FrameLayout implements ViewTreeObserver.OnPreDrawList
          */
         private final WeakReference<FloatingView> mFloatingView;
 
+        /**
+         * 共享的动画定时器
+         */
+        private final FloatingAnimationTicker mTicker;
+
         /**
          * 构造器
          */
-        FloatingAnimationHandler(FloatingView floatingView) {
+        FloatingAnimationHandler(FloatingView floatingView, FloatingAnimationTicker ticker) {
             mFloatingView = new WeakReference<>(floatingView);
+            mTicker = ticker;
             mStartedCode = ANIMATION_NONE;
             mState = STATE_NORMAL;
         }
 
         /**
-         * 进行动画的处理。
+         * 开始动画。之后的更新由共享的定时器每帧进行。
          */
         @Override
         public void handleMessage(Message msg) {
@@ -1615,21 +2272,40 @@ class FloatingView extends FrameLayout implements ViewTreeObserver.OnPreDrawList
                 return;
             }
 
-            final int animationCode = msg.what;
-            final int animationType = msg.arg1;
+            // 开始动画时的初始化
+            final WindowManager.LayoutParams params = floatingView.mParams;
+            // 只在改变状态时使用动画时间
+            mStartTime = mIsChangeState ? SystemClock.uptimeMillis() : 0;
+            mStartX = params.x;
+            mStartY = params.y;
+            mStartedCode = msg.what;
+            mIsChangeState = false;
+            if (onTick(SystemClock.uptimeMillis())) {
+                mTicker.start(this);
+            }
+        }
+
+        /**
+         * 进行动画的处理。
+         */
+        @Override
+        public boolean onTick(long frameTimeMillis) {
+            final FloatingView floatingView = mFloatingView.get();
+            if (floatingView == null || mStartedCode == ANIMATION_NONE) {
+                return false;
+            }
+
             final WindowManager.LayoutParams params = floatingView.mParams;
 
-            // 状态改变或开始动画时的初始化
-            if (mIsChangeState || animationType == TYPE_FIRST) {
-                // 只在改变状态时使用动画时间
-                mStartTime = mIsChangeState ? SystemClock.uptimeMillis() : 0;
+            // 状态改变时的初始化
+            if (mIsChangeState) {
+                mStartTime = frameTimeMillis;
                 mStartX = params.x;
                 mStartY = params.y;
-                mStartedCode = animationCode;
                 mIsChangeState = false;
             }
             // 经过的时间
-            final float elapsedTime = SystemClock.uptimeMillis() - mStartTime;
+            final float elapsedTime = Math.max(frameTimeMillis - mStartTime, 0);
             final float trackingTargetTimeRate = Math.min(elapsedTime / CAPTURE_DURATION_MILLIS, 1.0f);
 
             // 不重叠时的动画
@@ -1643,7 +2319,7 @@ class FloatingView extends FrameLayout implements ViewTreeObserver.OnPreDrawList
                 params.x = (int) (mStartX + (targetPositionX - mStartX) * basePosition);
                 params.y = (int) (mStartY + (targetPositionY - mStartY) * basePosition);
                 floatingView.updateViewLayout();
-                sendMessageAtTime(newMessage(animationCode, TYPE_UPDATE), SystemClock.uptimeMillis() + ANIMATION_REFRESH_TIME_MILLIS);
+                return true;
             }
             // 重叠时的动画
             else if (mState == FloatingView.STATE_INTERSECTING) {
@@ -1655,9 +2331,11 @@ class FloatingView extends FrameLayout implements ViewTreeObserver.OnPreDrawList
                 params.x = (int) (mStartX + (targetPositionX - mStartX) * basePosition);
                 params.y = (int) (mStartY + (targetPositionY - mStartY) * basePosition);
                 floatingView.updateViewLayout();
-                sendMessageAtTime(newMessage(animationCode, TYPE_UPDATE), SystemClock.uptimeMillis() + ANIMATION_REFRESH_TIME_MILLIS);
+                return true;
             }
 
+            mStartedCode = ANIMATION_NONE;
+            return false;
         }
 
         /**
@@ -1679,37 +2357,26 @@ class FloatingView extends FrameLayout implements ViewTreeObserver.OnPreDrawList
             return position;
         }
 
-        /**
-         * 发送动画信息。
-         *
-         * @param animation   ANIMATION_IN_TOUCH
-         * @param delayMillis 消息的发送时间
-         */
-        void sendAnimationMessageDelayed(int animation, long delayMillis) {
-            sendMessageAtTime(newMessage(animation, TYPE_FIRST), SystemClock.uptimeMillis() + delayMillis);
-        }
-
         /**
          * 并发送动画信息。
          *
          * @param animation ANIMATION_IN_TOUCH
          */
         void sendAnimationMessage(int animation) {
-            sendMessage(newMessage(animation, TYPE_FIRST));
+            sendEmptyMessage(animation);
         }
 
         /**
-         * 生成发送的信息。
+         * 停止动画(包括还没开始的动画)。
          *
          * @param animation ANIMATION_IN_TOUCH
-         * @param type      TYPE_FIRST,TYPE_UPDATE
-         * @return Message
          */
-        private static Message newMessage(int animation, int type) {
-            final Message message = Message.obtain();
-            message.what = animation;
-            message.arg1 = type;
-            return message;
+        void cancelAnimation(int animation) {
+            removeMessages(animation);
+            if (mStartedCode == animation) {
+                mStartedCode = ANIMATION_NONE;
+                mTicker.stop(this);
+            }
         }
 
         /**
@@ -1758,39 +2425,59 @@ class FloatingView extends FrameLayout implements ViewTreeObserver.OnPreDrawList
     }
 
     /**
-     * 判断长按的处理程序。<br/>
-     * dispatchTouchEvent由于所有的触摸处理都是在里面实现的，长按也是独立实现的。
+     * 在下一帧反映屏幕变化后的位置。
      */
-    static class LongPressHandler extends Handler {
+    static class LayoutUpdateAction implements Runnable {
 
         /**
-         * TrashView
+         * FloatingView
          */
         private final WeakReference<FloatingView> mFloatingView;
 
         /**
-         * 表示没有动画的状态的常量
+         * 构造函数
+         *
+         * @param view FloatingView
          */
-        private static final int LONG_PRESSED = 0;
+        LayoutUpdateAction(FloatingView view) {
+            mFloatingView = new WeakReference<>(view);
+        }
+
+        @Override
+        public void run() {
+            final FloatingView view = mFloatingView.get();
+            if (view != null) {
+                view.updateViewLayout();
+            }
+        }
+    }
+
+    /**
+     * 判断长按的处理。<br/>
+     * dispatchTouchEvent由于所有的触摸处理都是在里面实现的，长按也是独立实现的。
+     */
+    static class LongPressAction implements Runnable {
+
+        /**
+         * FloatingView
+         */
+        private final WeakReference<FloatingView> mFloatingView;
 
         /**
          * 构造函数
          *
          * @param view FloatingView
          */
-        LongPressHandler(FloatingView view) {
+        LongPressAction(FloatingView view) {
             mFloatingView = new WeakReference<>(view);
         }
 
         @Override
-        public void handleMessage(Message msg) {
-            FloatingView view = mFloatingView.get();
-            if (view == null) {
-                removeMessages(LONG_PRESSED);
-                return;
+        public void run() {
+            final FloatingView view = mFloatingView.get();
+            if (view != null) {
+                view.onLongClick();
             }
-
-            view.onLongClick();
         }
     }
 }
@@ -18,8 +18,10 @@ package com.taptap.common.widget.floatview;
 
 import android.app.Activity;
 import android.content.Context;
+import android.content.ContextWrapper;
 import android.content.res.Configuration;
 import android.content.res.Resources;
+import android.graphics.PointF;
 import android.graphics.Rect;
 import android.graphics.drawable.Drawable;
 import android.os.Build;
@@ -28,6 +30,7 @@ import android.view.DisplayCutout;
 import android.view.HapticFeedbackConstants;
 import android.view.MotionEvent;
 import android.view.View;
+import android.view.ViewParent;
 import android.view.WindowInsets;
 import android.view.WindowManager;
 import android.widget.FrameLayout;
@@ -45,7 +48,7 @@ import java.util.ArrayList;
  * TODO:动作各不相同，找原因
  * TODO:追踪移动的复数显示支持在第2弹中支持
  */
-public class FloatingViewManager implements ScreenChangedListener, View.OnTouchListener, TrashViewListener {
+public class FloatingViewManager implements ScreenChangedListener, View.OnTouchListener, TrashViewListener, FloatingDisplayState.OnDisplayChangedListener {
 
     /**
      * 经常显示的模式
@@ -117,6 +120,16 @@ public class FloatingViewManager implements ScreenChangedListener, View.OnTouchL
      */
     public static final float SHAPE_RECTANGLE = 1.4142f;
 
+    /**
+     * 吸附点的默认吸附半径(dp)
+     */
+    private static final int DEFAULT_SNAP_RADIUS_DP = 64;
+
+    /**
+     * 在同一边缘堆叠的FloatingView的间隔(dp)
+     */
+    private static final int EDGE_STACK_SPACING_DP = 4;
+
     /**
      * {@link Context}
      */
@@ -128,9 +141,14 @@ public class FloatingViewManager implements ScreenChangedListener, View.OnTouchL
     private final Resources mResources;
 
     /**
-     * WindowManager
+     * WindowManager(计数所有View的窗口操作)
      */
-    private final WindowManager mWindowManager;
+    private final CountingWindowManager mWindowManager;
+
+    /**
+     * 绑定的显示器的状态缓存
+     */
+    private final FloatingDisplayState mDisplayState;
 
     /**
      * {@link DisplayMetrics}
@@ -143,14 +161,39 @@ public class FloatingViewManager implements ScreenChangedListener, View.OnTouchL
     private FloatingView mTargetFloatingView;
 
     /**
-     * 监视整个屏幕的视图。
+     * 监视整个屏幕的视图(第一次粘贴FloatingView时生成)。
+     */
+    private FullscreenObserverView mFullscreenObserverView;
+
+    /**
+     * 删除Floating View的View(第一次拖动时生成)。
+     */
+    private TrashView mTrashView;
+
+    /**
+     * TrashView的有效/无效(TrashView生成前也保持)
      */
-    private final FullscreenObserverView mFullscreenObserverView;
+    private boolean mIsTrashViewEnabled;
 
     /**
-     * 删除Floating View的View。
+     * 固定删除图标的图像ID(TrashView生成前保持)
      */
-    private final TrashView mTrashView;
+    private int mFixedTrashIconResId;
+
+    /**
+     * 固定删除图标(TrashView生成前保持)
+     */
+    private Drawable mFixedTrashIconDrawable;
+
+    /**
+     * 动作删除图标的图像ID(TrashView生成前保持)
+     */
+    private int mActionTrashIconResId;
+
+    /**
+     * 动作删除图标(TrashView生成前保持)
+     */
+    private Drawable mActionTrashIconDrawable;
 
     /**
      * FloatingViewListener
@@ -190,6 +233,71 @@ public class FloatingViewManager implements ScreenChangedListener, View.OnTouchL
      */
     private final ArrayList<FloatingView> mFloatingViewList;
 
+    /**
+     * Drag metrics recorder(null if disabled)
+     */
+    private FloatingViewMetrics mMetricsRecorder;
+
+    /**
+     * 承载所有FloatingView的共享窗口(null时每个FloatingView有自己的窗口)
+     */
+    private SharedOverlayView mSharedOverlayView;
+
+    /**
+     * 设定了共享窗口的有效/无效的标志(没有设定时按照FloatingDeviceProfile)
+     */
+    private boolean mIsSharedWindowConfigured;
+
+    /**
+     * 决定默认值的设备性能
+     */
+    private FloatingDeviceProfile mDeviceProfile;
+
+    /**
+     * 所有FloatingView和TrashView共享的动画定时器
+     */
+    private final FloatingAnimationTicker mAnimationTicker;
+
+    /**
+     * Hardware layers during animations
+     */
+    private final AnimationLayerPolicy mLayerPolicy;
+
+    /**
+     * 吸附点
+     */
+    private final FloatingDockingEngine mDockingEngine;
+
+    /**
+     * 边缘的堆叠
+     */
+    private final FloatingEdgeLayout mEdgeLayout;
+
+    /**
+     * Gesture trace recorder(null if not recording)
+     */
+    private GestureTraceRecorder mTraceRecorder;
+
+    /**
+     * Gesture trace replayer(null if not replaying)
+     */
+    private GestureTraceReplayer mTraceReplayer;
+
+    /**
+     * Suspended flag
+     */
+    private boolean mIsSuspended;
+
+    /**
+     * Display mode when suspended
+     */
+    private int mSuspendedDisplayMode;
+
+    /**
+     * Store of the bubble positions(null if not persisted)
+     */
+    private FloatingPositionStore mPositionStore;
+
     /**
      * 构造器
      *
@@ -197,9 +305,12 @@ public class FloatingViewManager implements ScreenChangedListener, View.OnTouchL
      * @param listener FloatingViewListener
      */
     public FloatingViewManager(Context context, FloatingViewListener listener) {
-        mContext = context;
+        mWindowManager = new CountingWindowManager((WindowManager) context.getSystemService(Context.WINDOW_SERVICE));
+        // 所有的View都通过计数的WindowManager操作窗口
+        mContext = new WindowManagerContext(context, mWindowManager);
         mResources = context.getResources();
-        mWindowManager = (WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
+        // Display context的情况下WindowManager绑定到那个显示器
+        mDisplayState = new FloatingDisplayState(context, mWindowManager.getDefaultDisplay());
         mDisplayMetrics = new DisplayMetrics();
         mFloatingViewListener = listener;
         mFloatingViewRect = new Rect();
@@ -207,11 +318,85 @@ public class FloatingViewManager implements ScreenChangedListener, View.OnTouchL
         mIsMoveAccept = false;
         mDisplayMode = DISPLAY_MODE_HIDE_FULLSCREEN;
         mSafeInsetRect = new Rect();
+        mIsTrashViewEnabled = true;
 
-        // 构建与Floating View合作的View
+        // 与Floating View合作的View(FullscreenObserverView、TrashView)在需要时构建
         mFloatingViewList = new ArrayList<>();
-        mFullscreenObserverView = new FullscreenObserverView(context, this);
-        mTrashView = new TrashView(context);
+        mAnimationTicker = new FloatingAnimationTicker();
+        mLayerPolicy = new AnimationLayerPolicy();
+        mDockingEngine = new FloatingDockingEngine((int) (DEFAULT_SNAP_RADIUS_DP * mResources.getDisplayMetrics().density));
+        mEdgeLayout = new FloatingEdgeLayout((int) (EDGE_STACK_SPACING_DP * mResources.getDisplayMetrics().density));
+        setDeviceProfile(FloatingDeviceProfile.detect(context));
+    }
+
+    /**
+     * Set the device profile that decides the defaults(animation tick rate, shared window, {@link #createOptions()}).
+     * Overrides the profile detected in the constructor.
+     *
+     * @param profile {@link FloatingDeviceProfile}
+     */
+    public void setDeviceProfile(@NonNull FloatingDeviceProfile profile) {
+        mDeviceProfile = profile;
+        mAnimationTicker.setFrameInterval(profile.getFrameInterval());
+    }
+
+    /**
+     * Get the device profile.
+     *
+     * @return {@link FloatingDeviceProfile}
+     */
+    public FloatingDeviceProfile getDeviceProfile() {
+        return mDeviceProfile;
+    }
+
+    /**
+     * Create Options with the defaults of the device profile(usePhysics, useDragSnapshot).
+     * The fields can still be overridden before {@link #addViewToWindow(View, Options)}.
+     *
+     * @return {@link Options}
+     */
+    public Options createOptions() {
+        final Options options = new Options();
+        options.usePhysics = mDeviceProfile.usePhysics();
+        options.useDragSnapshot = mDeviceProfile.useDragSnapshot();
+        return options;
+    }
+
+    /**
+     * 生成TrashView并粘贴到window中(已经粘贴的情况下什么都不做)。
+     * 在可能拖动到TrashView的时候(ACTION_DOWN)调用。
+     */
+    private void attachTrashViewIfNeeded() {
+        if (!mIsTrashViewEnabled || mIsSuspended || mFloatingViewList.isEmpty()) {
+            return;
+        }
+        if (mTrashView == null) {
+            mTrashView = new TrashView(mContext, mAnimationTicker, mLayerPolicy, mDisplayState);
+            mTrashView.setTrashViewListener(this);
+            mTrashView.setMetricsRecorder(mMetricsRecorder);
+            if (mFixedTrashIconDrawable != null) {
+                mTrashView.setFixedTrashIconImage(mFixedTrashIconDrawable);
+            } else if (mFixedTrashIconResId != 0) {
+                mTrashView.setFixedTrashIconImage(mFixedTrashIconResId);
+            }
+            if (mActionTrashIconDrawable != null) {
+                mTrashView.setActionTrashIconImage(mActionTrashIconDrawable);
+            } else if (mActionTrashIconResId != 0) {
+                mTrashView.setActionTrashIconImage(mActionTrashIconResId);
+            }
+        }
+        if (mTrashView.getParent() == null) {
+            addView(mTrashView, mTrashView.getWindowLayoutParams());
+        }
+    }
+
+    /**
+     * 隐藏TrashView(没有生成的情况下什么都不做)。
+     */
+    private void dismissTrashView() {
+        if (mTrashView != null) {
+            mTrashView.dismiss();
+        }
     }
 
     /**
@@ -221,7 +406,7 @@ public class FloatingViewManager implements ScreenChangedListener, View.OnTouchL
      */
     private boolean isIntersectWithTrash() {
         // 无效的情况下不进行重叠判定
-        if (!mTrashView.isTrashEnabled()) {
+        if (mTrashView == null || !mTrashView.isTrashEnabled()) {
             return false;
         }
         // INFO:Trash View和Floating View需要相同的Gravity。
@@ -235,6 +420,11 @@ public class FloatingViewManager implements ScreenChangedListener, View.OnTouchL
      */
     @Override
     public void onScreenChanged(Rect windowRect, int visibility) {
+        if (mTraceRecorder != null) {
+            mTraceRecorder.recordScreenChanged(windowRect, visibility);
+        }
+        // 全局布局可能早于DisplayListener的通知，所以同步刷新
+        mDisplayState.refresh();
         // detect status bar
         final boolean isFitSystemWindowTop = windowRect.top == 0;
         boolean isHideStatusBar;
@@ -250,10 +440,10 @@ public class FloatingViewManager implements ScreenChangedListener, View.OnTouchL
         if (visibility == FullscreenObserverView.NO_LAST_VISIBILITY) {
             // At the first it can not get the correct value, so do special processing
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
-                mWindowManager.getDefaultDisplay().getRealMetrics(mDisplayMetrics);
+                mDisplayState.getRealMetrics(mDisplayMetrics);
                 isHideNavigationBar = windowRect.width() - mDisplayMetrics.widthPixels == 0 && windowRect.bottom - mDisplayMetrics.heightPixels == 0;
             } else {
-                mWindowManager.getDefaultDisplay().getMetrics(mDisplayMetrics);
+                mDisplayState.getMetrics(mDisplayMetrics);
                 isHideNavigationBar = windowRect.width() - mDisplayMetrics.widthPixels > 0 || windowRect.height() - mDisplayMetrics.heightPixels > 0;
             }
         } else {
@@ -278,12 +468,12 @@ public class FloatingViewManager implements ScreenChangedListener, View.OnTouchL
                 final FloatingView floatingView = mFloatingViewList.get(i);
                 floatingView.setVisibility(isFitSystemWindowTop ? View.GONE : View.VISIBLE);
             }
-            mTrashView.dismiss();
+            dismissTrashView();
         }
         // 重叠时删除
         else if (state == FloatingView.STATE_INTERSECTING) {
             mTargetFloatingView.setFinishing();
-            mTrashView.dismiss();
+            dismissTrashView();
         }
     }
 
@@ -336,6 +526,9 @@ public class FloatingViewManager implements ScreenChangedListener, View.OnTouchL
      */
     @Override
     public boolean onTouch(View v, MotionEvent event) {
+        if (mTraceRecorder != null) {
+            mTraceRecorder.recordTouch(GestureTraceRecorder.SOURCE_MANAGER, v, event);
+        }
         final int action = event.getAction();
 
         // 如果不是按下状态却没有移动许可，则什么也不做(对应于旋转后马上来ACTION MOVE, Floating View消失的现象)
@@ -349,6 +542,7 @@ public class FloatingViewManager implements ScreenChangedListener, View.OnTouchL
         // 按下
         if (action == MotionEvent.ACTION_DOWN) {
             mIsMoveAccept = true;
+            attachTrashViewIfNeeded();
         }
         // 移动
         else if (action == MotionEvent.ACTION_MOVE) {
@@ -393,6 +587,9 @@ public class FloatingViewManager implements ScreenChangedListener, View.OnTouchL
         // 向TrashView通知事件
         // 在正常情况下，传递手指的位置
         // 如果重叠，就传递TrashView的位置
+        if (mTrashView == null) {
+            return false;
+        }
         if (state == FloatingView.STATE_INTERSECTING) {
             mTrashView.onTouchFloatingView(event, mFloatingViewRect.left, mFloatingViewRect.top);
         } else {
@@ -409,7 +606,11 @@ public class FloatingViewManager implements ScreenChangedListener, View.OnTouchL
      * @param resId drawable ID
      */
     public void setFixedTrashIconImage(@DrawableRes int resId) {
-        mTrashView.setFixedTrashIconImage(resId);
+        mFixedTrashIconResId = resId;
+        mFixedTrashIconDrawable = null;
+        if (mTrashView != null) {
+            mTrashView.setFixedTrashIconImage(resId);
+        }
     }
 
     /**
@@ -418,7 +619,11 @@ public class FloatingViewManager implements ScreenChangedListener, View.OnTouchL
      * @param resId drawable ID
      */
     public void setActionTrashIconImage(@DrawableRes int resId) {
-        mTrashView.setActionTrashIconImage(resId);
+        mActionTrashIconResId = resId;
+        mActionTrashIconDrawable = null;
+        if (mTrashView != null) {
+            mTrashView.setActionTrashIconImage(resId);
+        }
     }
 
     /**
@@ -427,7 +632,11 @@ public class FloatingViewManager implements ScreenChangedListener, View.OnTouchL
      * @param drawable Drawable
      */
     public void setFixedTrashIconImage(Drawable drawable) {
-        mTrashView.setFixedTrashIconImage(drawable);
+        mFixedTrashIconDrawable = drawable;
+        mFixedTrashIconResId = 0;
+        if (mTrashView != null) {
+            mTrashView.setFixedTrashIconImage(drawable);
+        }
     }
 
     /**
@@ -436,7 +645,11 @@ public class FloatingViewManager implements ScreenChangedListener, View.OnTouchL
      * @param drawable Drawable
      */
     public void setActionTrashIconImage(Drawable drawable) {
-        mTrashView.setActionTrashIconImage(drawable);
+        mActionTrashIconDrawable = drawable;
+        mActionTrashIconResId = 0;
+        if (mTrashView != null) {
+            mTrashView.setActionTrashIconImage(drawable);
+        }
     }
 
     /**
@@ -446,6 +659,10 @@ public class FloatingViewManager implements ScreenChangedListener, View.OnTouchL
      */
     public void setDisplayMode(@DisplayMode int displayMode) {
         mDisplayMode = displayMode;
+        // 暂停中在resume时反映
+        if (mIsSuspended) {
+            return;
+        }
         // 总是显示全屏幕时非显示模式的情况
         if (mDisplayMode == DISPLAY_MODE_SHOW_ALWAYS || mDisplayMode == DISPLAY_MODE_HIDE_FULLSCREEN) {
             for (FloatingView floatingView : mFloatingViewList) {
@@ -457,7 +674,7 @@ public class FloatingViewManager implements ScreenChangedListener, View.OnTouchL
             for (FloatingView floatingView : mFloatingViewList) {
                 floatingView.setVisibility(View.GONE);
             }
-            mTrashView.dismiss();
+            dismissTrashView();
         }
     }
 
@@ -467,7 +684,33 @@ public class FloatingViewManager implements ScreenChangedListener, View.OnTouchL
      * @param enabled true时表示
      */
     public void setTrashViewEnabled(boolean enabled) {
-        mTrashView.setTrashEnabled(enabled);
+        mIsTrashViewEnabled = enabled;
+        if (mTrashView != null) {
+            mTrashView.setTrashEnabled(enabled);
+        }
+    }
+
+    /**
+     * 显示器的状态变化时调整所有View的布局。
+     */
+    @Override
+    public void onDisplayChanged(FloatingDisplayState state) {
+        final int size = mFloatingViewList.size();
+        for (int i = 0; i < size; i++) {
+            mFloatingViewList.get(i).onDisplayChanged();
+        }
+        if (mTrashView != null) {
+            mTrashView.onDisplayChanged();
+        }
+    }
+
+    /**
+     * 获取显示View的显示器的ID。
+     *
+     * @return display id
+     */
+    public int getDisplayId() {
+        return mDisplayState.getDisplayId();
     }
 
     /**
@@ -476,7 +719,284 @@ public class FloatingViewManager implements ScreenChangedListener, View.OnTouchL
      * @return 为true时为显示状态(重叠判定有效的状态)
      */
     public boolean isTrashViewEnabled() {
-        return mTrashView.isTrashEnabled();
+        return mIsTrashViewEnabled;
+    }
+
+    /**
+     * Set the listener of drag metrics(frame durations, dropped frames, touch latency and WindowManager calls).
+     * Metrics are recorded only while a listener is set.
+     *
+     * @param listener {@link FloatingViewMetricsListener}(null to disable)
+     */
+    public void setMetricsListener(FloatingViewMetricsListener listener) {
+        if (listener == null) {
+            setMetricsRecorder(null);
+        } else {
+            setMetricsRecorder(new FloatingViewMetrics(listener, mDisplayState.getRefreshRate()));
+        }
+    }
+
+    /**
+     * Set the drag metrics recorder to all views.
+     *
+     * @param recorder {@link FloatingViewMetrics}(null to disable)
+     */
+    private void setMetricsRecorder(FloatingViewMetrics recorder) {
+        // 拖动中替换的情况下结束旧的记录(否则frame callback会一直重新post)
+        if (mMetricsRecorder != null && mMetricsRecorder != recorder) {
+            mMetricsRecorder.onGestureEnd();
+        }
+        mMetricsRecorder = recorder;
+        for (FloatingView floatingView : mFloatingViewList) {
+            floatingView.setMetricsRecorder(mMetricsRecorder);
+        }
+        if (mTrashView != null) {
+            mTrashView.setMetricsRecorder(mMetricsRecorder);
+        }
+    }
+
+    /**
+     * Promote the animating views(trash background fades, trash icon scale) to hardware layers
+     * for the duration of each animation. Enabled by default.
+     *
+     * @param enabled true to use hardware layers during animations
+     */
+    public void setAnimationLayersEnabled(boolean enabled) {
+        mLayerPolicy.setEnabled(enabled);
+    }
+
+    /**
+     * Get the number of hardware layer promotions so far.
+     *
+     * @return number of promotions
+     */
+    public int getAnimationLayerPromotionCount() {
+        return mLayerPolicy.getPromotionCount();
+    }
+
+    /**
+     * Suspend all work while the host is idle or the bubbles are not needed(e.g. with DISPLAY_MODE_HIDE_ALWAYS).
+     * Hides the FloatingViews, detaches FullscreenObserverView and TrashView(and their listeners),
+     * and cancels all animations, timers and touch tracking, so that nothing wakes the CPU until {@link #resume()}.
+     * The positions of the FloatingViews are kept.
+     */
+    public void suspend() {
+        if (mIsSuspended) {
+            return;
+        }
+        mIsSuspended = true;
+        mSuspendedDisplayMode = mDisplayMode;
+        cancelGestureReplay();
+        mIsMoveAccept = false;
+        if (mMetricsRecorder != null) {
+            mMetricsRecorder.onGestureEnd();
+        }
+        for (FloatingView floatingView : mFloatingViewList) {
+            floatingView.suspend();
+        }
+        dismissTrashView();
+        mAnimationTicker.stopAll();
+        if (mFullscreenObserverView != null) {
+            removeViewImmediate(mFullscreenObserverView);
+        }
+        if (mTrashView != null) {
+            removeViewImmediate(mTrashView);
+        }
+    }
+
+    /**
+     * Resume from {@link #suspend()}, restoring the visibility of each FloatingView and the display mode.
+     */
+    public void resume() {
+        if (!mIsSuspended) {
+            return;
+        }
+        mIsSuspended = false;
+        if (!mFloatingViewList.isEmpty()) {
+            // 重新粘贴后onGlobalLayout会更新全屏幕的状态
+            addView(mFullscreenObserverView, mFullscreenObserverView.getWindowLayoutParams());
+            // TrashView在下次拖动时粘贴
+        }
+        for (FloatingView floatingView : mFloatingViewList) {
+            floatingView.resume();
+        }
+        // 暂停中变更的显示模式
+        if (mDisplayMode != mSuspendedDisplayMode) {
+            setDisplayMode(mDisplayMode);
+        }
+    }
+
+    /**
+     * @return true if suspended by {@link #suspend()}
+     */
+    public boolean isSuspended() {
+        return mIsSuspended;
+    }
+
+    /**
+     * Start recording the touch and screen-change events into a gesture trace.
+     * A recording in progress is discarded.
+     */
+    public void startGestureTrace() {
+        mDisplayState.getMetrics(mDisplayMetrics);
+        setTraceRecorder(new GestureTraceRecorder(mFloatingViewList, mDisplayMetrics));
+    }
+
+    /**
+     * Stop recording and get the gesture trace.
+     *
+     * @return compact binary trace(null if not recording)
+     */
+    public byte[] stopGestureTrace() {
+        if (mTraceRecorder == null) {
+            return null;
+        }
+        final byte[] trace = mTraceRecorder.toByteArray();
+        setTraceRecorder(null);
+        return trace;
+    }
+
+    /**
+     * Set the gesture trace recorder to all FloatingViews.
+     *
+     * @param recorder {@link GestureTraceRecorder}(null to disable)
+     */
+    private void setTraceRecorder(GestureTraceRecorder recorder) {
+        mTraceRecorder = recorder;
+        for (FloatingView floatingView : mFloatingViewList) {
+            floatingView.setTraceRecorder(mTraceRecorder);
+        }
+    }
+
+    /**
+     * Replay a gesture trace against the FloatingViews currently attached, with the recorded timing.
+     * The listener receives the CPU time and the WindowManager calls of each event.
+     * The FloatingViews should be added in the same order and at the same positions as when the trace was recorded.
+     *
+     * @param trace    trace obtained by {@link #stopGestureTrace()}
+     * @param listener {@link GestureReplayListener}
+     * @throws IllegalArgumentException if the trace is broken
+     */
+    public void replayGestureTrace(byte[] trace, GestureReplayListener listener) {
+        replayGestureTrace(trace, null, listener);
+    }
+
+    /**
+     * Replay a gesture trace and check its WindowManager calls against a budget.
+     * The listener receives the report first(see {@link GestureReplayReport#budgetViolation}),
+     * then an {@link IllegalStateException} is thrown on the main thread if the budget was exceeded,
+     * so that an instrumentation run replaying a canonical trace fails.
+     *
+     * @param trace    trace obtained by {@link #stopGestureTrace()}
+     * @param budget   {@link WindowOperationBudget}(null to not check)
+     * @param listener {@link GestureReplayListener}
+     * @throws IllegalArgumentException if the trace is broken
+     */
+    public void replayGestureTrace(byte[] trace, WindowOperationBudget budget, final GestureReplayListener listener) {
+        cancelGestureReplay();
+        final GestureTraceReplayer replayer = new GestureTraceReplayer(trace, budget, new GestureTraceReplayer.Target() {
+            @Override
+            public FloatingView getFloatingView(int index) {
+                return index >= 0 && index < mFloatingViewList.size() ? mFloatingViewList.get(index) : null;
+            }
+
+            @Override
+            public void onScreenChanged(Rect windowRect, int visibility) {
+                FloatingViewManager.this.onScreenChanged(windowRect, visibility);
+            }
+
+            @Override
+            public CountingWindowManager getWindowManager() {
+                return mWindowManager;
+            }
+
+            @Override
+            public float getRefreshRate() {
+                return mDisplayState.getRefreshRate();
+            }
+
+            @Override
+            public void onReplayFinished(GestureReplayReport report) {
+                mTraceReplayer = null;
+                if (listener != null) {
+                    listener.onReplayFinished(report);
+                }
+                if (!report.isWithinBudget()) {
+                    throw new IllegalStateException(report.budgetViolation);
+                }
+            }
+        });
+        mTraceReplayer = replayer;
+        replayer.start();
+    }
+
+    /**
+     * Reset the WindowManager call counts, before a scenario checked by {@link #verifyWindowOperations(WindowOperationBudget)}.
+     * Do not call it while a gesture trace is being replayed, the replay counts from its own start.
+     */
+    public void resetWindowOperationCounts() {
+        mWindowManager.reset();
+    }
+
+    /**
+     * Check the WindowManager calls since {@link #resetWindowOperationCounts()} against a budget,
+     * for scenarios outside a gesture replay(e.g. {@link WindowOperationBudget#addBubbles(int, boolean)}).
+     *
+     * @param budget {@link WindowOperationBudget}
+     * @throws IllegalStateException if the budget was exceeded
+     */
+    public void verifyWindowOperations(WindowOperationBudget budget) {
+        final String violation = budget.findViolation(mWindowManager.getAddViewCount(),
+                mWindowManager.getUpdateViewLayoutCount(), mWindowManager.getRemoveViewCount(), 0, 0);
+        if (violation != null) {
+            throw new IllegalStateException(violation);
+        }
+    }
+
+    /**
+     * Cancel the gesture trace replay in progress.
+     * The listener receives the events replayed so far.
+     */
+    public void cancelGestureReplay() {
+        if (mTraceReplayer != null) {
+            mTraceReplayer.cancel();
+        }
+    }
+
+    /**
+     * Host all FloatingViews in one overlay window and move them with translationX/Y instead of
+     * WindowManager#updateViewLayout. Must be called before the first {@link #addViewToWindow(View, Options)}.
+     * If the touchable region of the window can not be set on this device, or on Android 12 and later(where the
+     * occlusion check for untrusted touches uses the window frame), each FloatingView keeps its own window.
+     * If this is not called, {@link FloatingDeviceProfile#useSharedWindow()} decides.
+     *
+     * @param enabled true to use the shared window
+     * @return true if the shared window is used
+     */
+    public boolean setSharedWindowEnabled(boolean enabled) {
+        if (!mFloatingViewList.isEmpty()) {
+            throw new IllegalStateException("setSharedWindowEnabled must be called before addViewToWindow");
+        }
+        mIsSharedWindowConfigured = true;
+        if (enabled && SharedOverlayView.isSupported()) {
+            createSharedOverlayViewIfNeeded();
+        } else {
+            mSharedOverlayView = null;
+        }
+        return mSharedOverlayView != null;
+    }
+
+    /**
+     * 生成共享窗口。
+     * Touchable Region不能设置的情况下整个窗口会吞掉触摸，所以不使用(每个FloatingView使用自己的窗口)。
+     */
+    private void createSharedOverlayViewIfNeeded() {
+        if (mSharedOverlayView == null) {
+            final SharedOverlayView sharedOverlayView = new SharedOverlayView(mContext);
+            if (sharedOverlayView.isTouchableRegionEnabled()) {
+                mSharedOverlayView = sharedOverlayView;
+            }
+        }
     }
 
     /**
@@ -503,7 +1023,56 @@ public class FloatingViewManager implements ScreenChangedListener, View.OnTouchL
             floatingView.setSafeInsetRect(mSafeInsetRect);
         }
         // dirty hack
-        mFullscreenObserverView.onGlobalLayout();
+        if (mFullscreenObserverView != null) {
+            mFullscreenObserverView.onGlobalLayout();
+        }
+    }
+
+    /**
+     * Add a snap target. A released bubble moves to the nearest target within the snap radius of where its
+     * velocity carries it, instead of following its move direction. Works with both tween and physics animations.
+     *
+     * @param x X coordinate of the target(0 = left edge, 1 = right edge of the movable range)
+     * @param y Y coordinate of the target(0 = bottom edge, 1 = top edge of the movable range)
+     */
+    public void addSnapTarget(float x, float y) {
+        mDockingEngine.addTarget(x, y);
+    }
+
+    /**
+     * Remove all snap targets.
+     */
+    public void clearSnapTargets() {
+        mDockingEngine.clear();
+    }
+
+    /**
+     * Set the distance within which a released bubble snaps to a target(default 64dp).
+     *
+     * @param snapRadius snap radius(px)
+     */
+    public void setSnapRadius(int snapRadius) {
+        mDockingEngine.setSnapRadius(snapRadius);
+    }
+
+    /**
+     * Stack the bubbles resting on the same left or right edge so they do not overlap(default true).
+     * Displaced bubbles slide along the edge, and move back when the space frees up.
+     *
+     * @param enabled true to stack bubbles on the edges
+     */
+    public void setEdgeStackingEnabled(boolean enabled) {
+        mEdgeLayout.setEnabled(enabled);
+    }
+
+    /**
+     * Set the store that persists the resting position of each bubble with {@link Options#positionId}.
+     * Must be called before {@link #addViewToWindow(View, Options)} to restore the positions.
+     *
+     * @param store {@link FloatingPositionStore}(null to disable)
+     */
+    public void setPositionStore(FloatingPositionStore store) {
+        mPositionStore = store;
     }
 
     /**
@@ -513,9 +1082,17 @@ public class FloatingViewManager implements ScreenChangedListener, View.OnTouchL
      * @param options Options
      */
     public void addViewToWindow(View view, Options options) {
+        resume();
         final boolean isFirstAttach = mFloatingViewList.isEmpty();
+        if (isFirstAttach) {
+            mDisplayState.register(this);
+        }
+        // 没有设定共享窗口的情况下按照设备性能
+        if (isFirstAttach && !mIsSharedWindowConfigured && mDeviceProfile.useSharedWindow()) {
+            createSharedOverlayViewIfNeeded();
+        }
         // FloatingView
-        final FloatingView floatingView = new FloatingView(mContext);
+        final FloatingView floatingView = new FloatingView(mContext, mAnimationTicker, mDisplayState);
         floatingView.setInitCoords(options.floatingViewX, options.floatingViewY);
         floatingView.setOnTouchListener(this);
         floatingView.setShape(options.shape);
@@ -523,7 +1100,20 @@ public class FloatingViewManager implements ScreenChangedListener, View.OnTouchL
         floatingView.setMoveDirection(options.moveDirection);
         floatingView.usePhysics(options.usePhysics);
         floatingView.setAnimateInitialMove(options.animateInitialMove);
+        floatingView.setTouchPredictionMillis(options.touchPredictionMillis);
+        floatingView.setDragSnapshotEnabled(options.useDragSnapshot);
         floatingView.setSafeInsetRect(mSafeInsetRect);
+        floatingView.setMetricsRecorder(mMetricsRecorder);
+        floatingView.setTraceRecorder(mTraceRecorder);
+        floatingView.setDockingEngine(mDockingEngine);
+        floatingView.setEdgeLayout(mEdgeLayout);
+        if (mPositionStore != null && options.positionId != null) {
+            final PointF position = new PointF();
+            if (mPositionStore.get(options.positionId, position)) {
+                floatingView.setInitNormalizedCoords(position.x, position.y);
+            }
+            floatingView.setPositionStore(mPositionStore, options.positionId);
+        }
 
         // set FloatingView size
         final FrameLayout.LayoutParams targetParams = new FrameLayout.LayoutParams(options.floatingViewWidth, options.floatingViewHeight);
@@ -534,21 +1124,38 @@ public class FloatingViewManager implements ScreenChangedListener, View.OnTouchL
         if (mDisplayMode == DISPLAY_MODE_HIDE_ALWAYS) {
             floatingView.setVisibility(View.GONE);
         }
+        // 在屏幕外测量，以最终的位置粘贴(避免onPreDraw中再次updateViewLayout)
+        floatingView.preMeasure();
         mFloatingViewList.add(floatingView);
-        // TrashView
-        mTrashView.setTrashViewListener(this);
+        // 全屏监视视图在第一次粘贴时构建
+        if (mFullscreenObserverView == null) {
+            mFullscreenObserverView = new FullscreenObserverView(mContext, this);
+        }
+
+        // 共享窗口的情况下只添加到容器(没有IPC)
+        if (mSharedOverlayView != null) {
+            floatingView.setSharedOverlay(mSharedOverlayView);
+            mSharedOverlayView.addFloatingView(floatingView);
+            if (isFirstAttach) {
+                addView(mSharedOverlayView, mSharedOverlayView.getWindowLayoutParams());
+                addView(mFullscreenObserverView, mFullscreenObserverView.getWindowLayoutParams());
+                mTargetFloatingView = floatingView;
+            }
+            return;
+        }
 
         // View的粘贴
-        mWindowManager.addView(floatingView, floatingView.getWindowLayoutParams());
-        // 仅在第一次粘贴时粘贴全屏监视视图和删除视图
+        addView(floatingView, floatingView.getWindowLayoutParams());
+        // 仅在第一次粘贴时粘贴全屏监视视图
         if (isFirstAttach) {
-            mWindowManager.addView(mFullscreenObserverView, mFullscreenObserverView.getWindowLayoutParams());
+            addView(mFullscreenObserverView, mFullscreenObserverView.getWindowLayoutParams());
             mTargetFloatingView = floatingView;
-        } else {
+        }
+        // 因为我希望删除视图一定会出现在顶部，所以已经粘贴的情况下重新粘贴。
+        if (mTrashView != null && mTrashView.getParent() != null) {
             removeViewImmediate(mTrashView);
+            addView(mTrashView, mTrashView.getWindowLayoutParams());
         }
-        // 因为我希望它一定会出现在顶部，所以我每次都粘贴它。
-        mWindowManager.addView(mTrashView, mTrashView.getWindowLayoutParams());
     }
 
     /**
@@ -560,8 +1167,10 @@ public class FloatingViewManager implements ScreenChangedListener, View.OnTouchL
         final int matchIndex = mFloatingViewList.indexOf(floatingView);
         // 如果被发现，就显示并从列表中删除
         if (matchIndex != -1) {
-            removeViewImmediate(floatingView);
+            removeFloatingView(floatingView);
             mFloatingViewList.remove(matchIndex);
+            // 被这个View推开的View回到原来的位置
+            mEdgeLayout.remove(floatingView);
         }
 
         // 检查剩下的View
@@ -573,19 +1182,105 @@ public class FloatingViewManager implements ScreenChangedListener, View.OnTouchL
         }
     }
 
+    /**
+     * 判断是否没有显示中的View。
+     *
+     * @return 没有的情况下为true
+     */
+    boolean isEmpty() {
+        return mFloatingViewList.isEmpty();
+    }
+
+    /**
+     * 判断View是否由这个FloatingViewManager显示。
+     *
+     * @param view 使之浮动的View
+     * @return 显示中的情况下为true
+     */
+    boolean containsView(View view) {
+        return mFloatingViewList.contains(view.getParent());
+    }
+
+    /**
+     * 为了移动到其他显示器，从window中取下View(不通知结束)。
+     * 没有剩下的View的情况下，这个FloatingViewManager的window也全部取下。
+     *
+     * @param view 使之浮动的View
+     * @return 取下的情况下为true
+     */
+    boolean detachViewFromWindow(View view) {
+        final ViewParent parent = view.getParent();
+        final int matchIndex = mFloatingViewList.indexOf(parent);
+        if (matchIndex == -1) {
+            return false;
+        }
+        final FloatingView floatingView = mFloatingViewList.get(matchIndex);
+        removeFloatingView(floatingView);
+        mFloatingViewList.remove(matchIndex);
+        mEdgeLayout.remove(floatingView);
+        floatingView.removeView(view);
+        if (mFloatingViewList.isEmpty()) {
+            removeAllViewToWindow();
+        } else if (mTargetFloatingView == floatingView) {
+            mTargetFloatingView = mFloatingViewList.get(0);
+        }
+        return true;
+    }
+
     /**
      * 把View从window中全部取下。
      */
     public void removeAllViewToWindow() {
-        removeViewImmediate(mFullscreenObserverView);
-        removeViewImmediate(mTrashView);
+        cancelGestureReplay();
+        mIsSuspended = false;
+        if (mFullscreenObserverView != null) {
+            removeViewImmediate(mFullscreenObserverView);
+        }
+        if (mTrashView != null) {
+            removeViewImmediate(mTrashView);
+        }
         //删除FloatingView
         final int size = mFloatingViewList.size();
         for (int i = 0; i < size; i++) {
             final FloatingView floatingView = mFloatingViewList.get(i);
-            removeViewImmediate(floatingView);
+            removeFloatingView(floatingView);
         }
         mFloatingViewList.clear();
+        mEdgeLayout.clear();
+        mAnimationTicker.stopAll();
+        if (mSharedOverlayView != null) {
+            removeViewImmediate(mSharedOverlayView);
+        }
+        if (mPositionStore != null) {
+            mPositionStore.flush();
+        }
+        mDisplayState.unregister();
+    }
+
+    /**
+     * 从window中移除FloatingView(共享窗口的情况下从容器中移除)。
+     *
+     * @param floatingView FloatingView
+     */
+    private void removeFloatingView(FloatingView floatingView) {
+        if (mSharedOverlayView != null) {
+            mSharedOverlayView.removeFloatingView(floatingView);
+        } else {
+            removeViewImmediate(floatingView);
+        }
+    }
+
+    /**
+     * Add the View to the WindowManager
+     *
+     * @param view   {@link View}
+     * @param params {@link WindowManager.LayoutParams}
+     */
+    private void addView(View view, WindowManager.LayoutParams params) {
+        mWindowManager.addView(view, params);
+        if (mMetricsRecorder != null) {
+            mMetricsRecorder.onWindowOperation();
+        }
     }
 
     /**
@@ -597,6 +1292,9 @@ public class FloatingViewManager implements ScreenChangedListener, View.OnTouchL
         // fix #100(crashes on Android 8)
         try {
             mWindowManager.removeViewImmediate(view);
+            if (mMetricsRecorder != null) {
+                mMetricsRecorder.onWindowOperation();
+            }
         } catch (IllegalArgumentException e) {
             //do nothing
         }
@@ -631,6 +1329,39 @@ public class FloatingViewManager implements ScreenChangedListener, View.OnTouchL
         return safeInsetRect;
     }
 
+    /**
+     * 返回计数的WindowManager的Context。
+     */
+    private static class WindowManagerContext extends ContextWrapper {
+
+        /**
+         * 计数的WindowManager
+         */
+        private final WindowManager mWindowManager;
+
+        /**
+         * 构造器
+         *
+         * @param base          Context
+         * @param windowManager 计数的WindowManager
+         */
+        WindowManagerContext(Context base, WindowManager windowManager) {
+            super(base);
+            mWindowManager = windowManager;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Object getSystemService(String name) {
+            if (Context.WINDOW_SERVICE.equals(name)) {
+                return mWindowManager;
+            }
+            return super.getSystemService(name);
+        }
+    }
+
     /**
      * 表示粘贴Floating View时的选项的类。
      */
@@ -683,6 +1414,24 @@ public class FloatingViewManager implements ScreenChangedListener, View.OnTouchL
          */
         public boolean animateInitialMove;
 
+        /**
+         * How far ahead the touch position is predicted while dragging(ms)
+         * ※0 is disabled, about one frame(16ms) compensates the layout latency
+         */
+        public long touchPredictionMillis;
+
+        /**
+         * Rasterize the bubble content once on ACTION_DOWN and draw only that snapshot until ACTION_UP
+         * ※Effective for complex content(avatar with badges etc.), the snapshot is redrawn only if the content invalidates itself
+         */
+        public boolean useDragSnapshot;
+
+        /**
+         * ID of the position in {@link #setPositionStore(FloatingPositionStore)}
+         * ※null is not stored, a stored position takes precedence over floatingViewX/Y
+         */
+        public String positionId;
+
         /**
          * 设定选项的默认值。
          */
@@ -696,6 +1445,9 @@ public class FloatingViewManager implements ScreenChangedListener, View.OnTouchL
             moveDirection = MOVE_DIRECTION_DEFAULT;
             usePhysics = true;
             animateInitialMove = true;
+            touchPredictionMillis = 0;
+            useDragSnapshot = false;
+            positionId = null;
         }
 
     }
@@ -0,0 +1,222 @@
+/**
+ * Copyright 2015 RECRUIT LIFESTYLE CO., LTD.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.taptap.common.widget.floatview;
+
+import android.os.SystemClock;
+import android.view.Choreographer;
+
+import java.util.Arrays;
+
+/**
+ * Records frame timing, touch latency and WindowManager calls of drag gestures.
+ * All methods must be called on the main thread.
+ */
+class FloatingViewMetrics implements Choreographer.FrameCallback {
+
+    /**
+     * Maximum number of samples kept per gesture
+     */
+    private static final int MAX_SAMPLES = 1024;
+
+    /**
+     * Percentiles reported by {@link GestureMetrics}
+     */
+    private static final float[] PERCENTILES = {0.5f, 0.9f, 0.99f};
+
+    /**
+     * Nanoseconds per millisecond
+     */
+    private static final float NANOS_PER_MILLIS = 1000000f;
+
+    /**
+     * FloatingViewMetricsListener
+     */
+    private final FloatingViewMetricsListener mListener;
+
+    /**
+     * Frame interval of the display(ns)
+     */
+    private final long mFrameIntervalNanos;
+
+    /**
+     * Frame durations of the current gesture(ms)
+     */
+    private final float[] mFrameDurations;
+
+    /**
+     * Touch-to-layout latencies of the current gesture(ms)
+     */
+    private final float[] mTouchLatencies;
+
+    /**
+     * Distances between the finger and the view of the current gesture(px)
+     */
+    private final float[] mPositionLags;
+
+    /**
+     * Number of frame samples
+     */
+    private int mFrameCount;
+
+    /**
+     * Number of latency samples
+     */
+    private int mLatencyCount;
+
+    /**
+     * Number of dropped frames
+     */
+    private int mDroppedFrameCount;
+
+    /**
+     * Number of WindowManager calls during the gesture
+     */
+    private int mWindowOperationCount;
+
+    /**
+     * Frame time of the previous frame(ns)
+     */
+    private long mLastFrameTimeNanos;
+
+    /**
+     * Start time of the gesture(ms)
+     */
+    private long mGestureStartTime;
+
+    /**
+     * Gesture tracking flag
+     */
+    private boolean mIsTracking;
+
+    /**
+     * Constructor
+     *
+     * @param listener    FloatingViewMetricsListener
+     * @param refreshRate refresh rate of the display(Hz)
+     */
+    FloatingViewMetrics(FloatingViewMetricsListener listener, float refreshRate) {
+        mListener = listener;
+        mFrameIntervalNanos = (long) (1000000000L / (refreshRate > 0 ? refreshRate : 60f));
+        mFrameDurations = new float[MAX_SAMPLES];
+        mTouchLatencies = new float[MAX_SAMPLES];
+        mPositionLags = new float[MAX_SAMPLES];
+    }
+
+    /**
+     * Called on ACTION_DOWN.
+     */
+    void onGestureStart() {
+        if (mIsTracking) {
+            onGestureEnd();
+        }
+        mIsTracking = true;
+        mFrameCount = 0;
+        mLatencyCount = 0;
+        mDroppedFrameCount = 0;
+        mWindowOperationCount = 0;
+        mLastFrameTimeNanos = 0;
+        mGestureStartTime = SystemClock.uptimeMillis();
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    /**
+     * Called on ACTION_UP or ACTION_CANCEL. Aggregates and reports the gesture.
+     */
+    void onGestureEnd() {
+        if (!mIsTracking) {
+            return;
+        }
+        mIsTracking = false;
+        Choreographer.getInstance().removeFrameCallback(this);
+        final GestureMetrics metrics = new GestureMetrics(
+                SystemClock.uptimeMillis() - mGestureStartTime,
+                mFrameCount,
+                mDroppedFrameCount,
+                percentiles(mFrameDurations, mFrameCount),
+                percentiles(mTouchLatencies, mLatencyCount),
+                percentiles(mPositionLags, mLatencyCount),
+                mWindowOperationCount);
+        if (mListener != null) {
+            mListener.onGestureMetrics(metrics);
+        }
+    }
+
+    /**
+     * Called when the layout is updated in response to a touch event.
+     *
+     * @param eventTime {@link android.view.MotionEvent#getEventTime()}
+     * @param lag       distance between the finger and the view(px)
+     */
+    void onTouchLayout(long eventTime, float lag) {
+        if (!mIsTracking || mLatencyCount == MAX_SAMPLES) {
+            return;
+        }
+        mTouchLatencies[mLatencyCount] = SystemClock.uptimeMillis() - eventTime;
+        mPositionLags[mLatencyCount] = lag;
+        mLatencyCount++;
+    }
+
+    /**
+     * Called on every WindowManager call(addView/updateViewLayout/removeViewImmediate).
+     */
+    void onWindowOperation() {
+        if (mIsTracking) {
+            mWindowOperationCount++;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (!mIsTracking) {
+            return;
+        }
+        if (mLastFrameTimeNanos != 0 && mFrameCount < MAX_SAMPLES) {
+            final long duration = frameTimeNanos - mLastFrameTimeNanos;
+            mFrameDurations[mFrameCount++] = duration / NANOS_PER_MILLIS;
+            // 超过1.5帧的间隔视为掉帧
+            if (duration * 2 > mFrameIntervalNanos * 3) {
+                mDroppedFrameCount += (int) ((duration + mFrameIntervalNanos / 2) / mFrameIntervalNanos) - 1;
+            }
+        }
+        mLastFrameTimeNanos = frameTimeNanos;
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    /**
+     * Calculate the percentiles(nearest rank) of the samples.
+     *
+     * @param samples samples
+     * @param count   number of valid samples
+     * @return p50, p90, p99
+     */
+    private static float[] percentiles(float[] samples, int count) {
+        final float[] result = new float[PERCENTILES.length];
+        if (count == 0) {
+            return result;
+        }
+        final float[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        for (int i = 0; i < PERCENTILES.length; i++) {
+            final int rank = (int) Math.ceil(PERCENTILES[i] * count) - 1;
+            result[i] = sorted[Math.min(Math.max(rank, 0), count - 1)];
+        }
+        return result;
+    }
+}
@@ -0,0 +1,86 @@
+/**
+ * Copyright 2015 RECRUIT LIFESTYLE CO., LTD.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.taptap.common.widget.floatview;
+
+import java.util.Arrays;
+
+/**
+ * Aggregated metrics of one drag gesture.
+ */
+public final class GestureMetrics {
+
+    /**
+     * Duration of the gesture(ms)
+     */
+    public final long durationMillis;
+
+    /**
+     * Number of frames rendered during the gesture
+     */
+    public final int frameCount;
+
+    /**
+     * Number of frames missed during the gesture
+     */
+    public final int droppedFrameCount;
+
+    /**
+     * Frame duration percentiles(ms) : p50, p90, p99
+     */
+    public final float[] frameDurationPercentiles;
+
+    /**
+     * Touch-to-layout latency percentiles(ms) : p50, p90, p99
+     */
+    public final float[] touchLatencyPercentiles;
+
+    /**
+     * Distance between the finger and the FloatingView at each touch layout(px) : p50, p90, p99
+     * ※Compare with and without {@link FloatingViewManager.Options#touchPredictionMillis}
+     */
+    public final float[] positionLagPercentiles;
+
+    /**
+     * Number of WindowManager calls(addView/updateViewLayout/removeViewImmediate)
+     */
+    public final int windowOperationCount;
+
+    /**
+     * Constructor
+     */
+    GestureMetrics(long durationMillis, int frameCount, int droppedFrameCount, float[] frameDurationPercentiles,
+                   float[] touchLatencyPercentiles, float[] positionLagPercentiles, int windowOperationCount) {
+        this.durationMillis = durationMillis;
+        this.frameCount = frameCount;
+        this.droppedFrameCount = droppedFrameCount;
+        this.frameDurationPercentiles = frameDurationPercentiles;
+        this.touchLatencyPercentiles = touchLatencyPercentiles;
+        this.positionLagPercentiles = positionLagPercentiles;
+        this.windowOperationCount = windowOperationCount;
+    }
+
+    @Override
+    public String toString() {
+        return "GestureMetrics{durationMillis=" + durationMillis +
+                ", frameCount=" + frameCount +
+                ", droppedFrameCount=" + droppedFrameCount +
+                ", frameDurationPercentiles=" + Arrays.toString(frameDurationPercentiles) +
+                ", touchLatencyPercentiles=" + Arrays.toString(touchLatencyPercentiles) +
+                ", positionLagPercentiles=" + Arrays.toString(positionLagPercentiles) +
+                ", windowOperationCount=" + windowOperationCount + "}";
+    }
+}
@@ -0,0 +1,32 @@
+/**
+ * Copyright 2015 RECRUIT LIFESTYLE CO., LTD.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.taptap.common.widget.floatview;
+
+
+/**
+ * GestureReplayListener。
+ */
+public interface GestureReplayListener {
+
+    /**
+     * Callback when a gesture trace replay finished.
+     *
+     * @param report CPU time and WindowManager calls of each replayed event
+     */
+    void onReplayFinished(GestureReplayReport report);
+
+}
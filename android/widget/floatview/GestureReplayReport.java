@@ -0,0 +1,122 @@
+/**
+ * Copyright 2015 RECRUIT LIFESTYLE CO., LTD.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.taptap.common.widget.floatview;
+
+/**
+ * Result of one gesture trace replay.
+ */
+public final class GestureReplayReport {
+
+    /**
+     * Number of replayed events(touch events and screen changes)
+     */
+    public final int eventCount;
+
+    /**
+     * Thread CPU time spent dispatching each event(ns)
+     */
+    public final long[] cpuTimeNanos;
+
+    /**
+     * WindowManager calls from each event until the next one(including animation frames in between)
+     */
+    public final int[] windowOperationCounts;
+
+    /**
+     * Sum of {@link #cpuTimeNanos}(ns)
+     */
+    public final long totalCpuTimeNanos;
+
+    /**
+     * Sum of {@link #windowOperationCounts}
+     */
+    public final int totalWindowOperationCount;
+
+    /**
+     * addView calls during the replay
+     */
+    public final int addViewCount;
+
+    /**
+     * updateViewLayout calls during the replay
+     */
+    public final int updateViewLayoutCount;
+
+    /**
+     * removeView/removeViewImmediate calls during the replay
+     */
+    public final int removeViewCount;
+
+    /**
+     * Touch events dispatched to a FloatingView
+     */
+    public final int touchEventCount;
+
+    /**
+     * Display frames from the start of the replay until the animations settled
+     */
+    public final int frameCount;
+
+    /**
+     * Description of the exceeded budget(null if within the budget or replayed without one)
+     */
+    public final String budgetViolation;
+
+    /**
+     * Constructor
+     */
+    GestureReplayReport(long[] cpuTimeNanos, int[] windowOperationCounts, int addViewCount, int updateViewLayoutCount,
+                        int removeViewCount, int touchEventCount, int frameCount, WindowOperationBudget budget) {
+        long totalCpuTimeNanos = 0;
+        int totalWindowOperationCount = 0;
+        for (int i = 0; i < cpuTimeNanos.length; i++) {
+            totalCpuTimeNanos += cpuTimeNanos[i];
+            totalWindowOperationCount += windowOperationCounts[i];
+        }
+        this.eventCount = cpuTimeNanos.length;
+        this.cpuTimeNanos = cpuTimeNanos;
+        this.windowOperationCounts = windowOperationCounts;
+        this.totalCpuTimeNanos = totalCpuTimeNanos;
+        this.totalWindowOperationCount = totalWindowOperationCount;
+        this.addViewCount = addViewCount;
+        this.updateViewLayoutCount = updateViewLayoutCount;
+        this.removeViewCount = removeViewCount;
+        this.touchEventCount = touchEventCount;
+        this.frameCount = frameCount;
+        this.budgetViolation = budget != null
+                ? budget.findViolation(addViewCount, updateViewLayoutCount, removeViewCount, touchEventCount, frameCount)
+                : null;
+    }
+
+    /**
+     * @return true if the replay stayed within its budget(or had none)
+     */
+    public boolean isWithinBudget() {
+        return budgetViolation == null;
+    }
+
+    @Override
+    public String toString() {
+        return "GestureReplayReport{eventCount=" + eventCount +
+                ", totalCpuTimeNanos=" + totalCpuTimeNanos +
+                ", totalWindowOperationCount=" + totalWindowOperationCount +
+                ", addViewCount=" + addViewCount +
+                ", updateViewLayoutCount=" + updateViewLayoutCount +
+                ", removeViewCount=" + removeViewCount +
+                ", budgetViolation=" + budgetViolation + "}";
+    }
+}
@@ -0,0 +1,187 @@
+/**
+ * Copyright 2015 RECRUIT LIFESTYLE CO., LTD.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.taptap.common.widget.floatview;
+
+import android.graphics.Rect;
+import android.os.SystemClock;
+import android.util.DisplayMetrics;
+import android.view.MotionEvent;
+import android.view.View;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Serializes the touch and screen-change events seen by FloatingView and FloatingViewManager
+ * into a compact binary trace that {@link GestureTraceReplayer} can replay.
+ * <p>
+ * Format(big endian):
+ * <pre>
+ * header : int MAGIC, byte VERSION, int widthPixels, int heightPixels, float density
+ * touch  : byte RECORD_TOUCH, byte source, byte viewIndex, short action,
+ *          int downTime, int eventTime, short historySize,
+ *          (short timeDelta, float rawX, float rawY) * (historySize + 1)
+ * screen : byte RECORD_SCREEN_CHANGED, int eventTime, int left, int top, int right, int bottom, int visibility
+ * </pre>
+ * Times are milliseconds from the start of the trace, time deltas are relative to eventTime.
+ * All methods must be called on the main thread.
+ */
+class GestureTraceRecorder {
+
+    /**
+     * "FVTR"
+     */
+    static final int MAGIC = 0x46565452;
+
+    /**
+     * Format version
+     */
+    static final byte VERSION = 1;
+
+    /**
+     * Touch event record
+     */
+    static final byte RECORD_TOUCH = 1;
+
+    /**
+     * Screen change record
+     */
+    static final byte RECORD_SCREEN_CHANGED = 2;
+
+    /**
+     * Event seen by FloatingView#dispatchTouchEvent
+     */
+    static final byte SOURCE_FLOATING_VIEW = 0;
+
+    /**
+     * Event seen by FloatingViewManager#onTouch
+     */
+    static final byte SOURCE_MANAGER = 1;
+
+    /**
+     * Encoded trace
+     */
+    private final ByteArrayOutputStream mBuffer;
+
+    /**
+     * Writer of the trace
+     */
+    private final DataOutputStream mOut;
+
+    /**
+     * FloatingViews of the manager(used to resolve the view index)
+     */
+    private final List<FloatingView> mFloatingViews;
+
+    /**
+     * Start time of the trace(ms)
+     */
+    private final long mStartTime;
+
+    /**
+     * Constructor
+     *
+     * @param floatingViews FloatingViews of the manager
+     * @param metrics       DisplayMetrics of the display
+     */
+    GestureTraceRecorder(List<FloatingView> floatingViews, DisplayMetrics metrics) {
+        mBuffer = new ByteArrayOutputStream(4096);
+        mOut = new DataOutputStream(mBuffer);
+        mFloatingViews = floatingViews;
+        mStartTime = SystemClock.uptimeMillis();
+        try {
+            mOut.writeInt(MAGIC);
+            mOut.writeByte(VERSION);
+            mOut.writeInt(metrics.widthPixels);
+            mOut.writeInt(metrics.heightPixels);
+            mOut.writeFloat(metrics.density);
+        } catch (IOException e) {
+            // ByteArrayOutputStream never throws
+        }
+    }
+
+    /**
+     * Record a touch event with all of its historical samples.
+     *
+     * @param source SOURCE_FLOATING_VIEW or SOURCE_MANAGER
+     * @param view   FloatingView that received the event
+     * @param event  {@link MotionEvent}
+     */
+    void recordTouch(byte source, View view, MotionEvent event) {
+        final long eventTime = event.getEventTime();
+        // 历史样本只有局部坐标，用本次事件的偏移还原为屏幕坐标
+        final float offsetX = event.getRawX() - event.getX();
+        final float offsetY = event.getRawY() - event.getY();
+        final int historySize = event.getHistorySize();
+        try {
+            mOut.writeByte(RECORD_TOUCH);
+            mOut.writeByte(source);
+            mOut.writeByte(mFloatingViews.indexOf(view));
+            mOut.writeShort(event.getAction());
+            mOut.writeInt((int) (event.getDownTime() - mStartTime));
+            mOut.writeInt((int) (eventTime - mStartTime));
+            mOut.writeShort(historySize);
+            for (int i = 0; i < historySize; i++) {
+                writeSample(event.getHistoricalEventTime(i) - eventTime,
+                        event.getHistoricalX(i) + offsetX, event.getHistoricalY(i) + offsetY);
+            }
+            writeSample(0, event.getRawX(), event.getRawY());
+        } catch (IOException e) {
+            // ByteArrayOutputStream never throws
+        }
+    }
+
+    /**
+     * Record a screen change.
+     *
+     * @param windowRect rect of the window
+     * @param visibility system UI visibility
+     */
+    void recordScreenChanged(Rect windowRect, int visibility) {
+        try {
+            mOut.writeByte(RECORD_SCREEN_CHANGED);
+            mOut.writeInt((int) (SystemClock.uptimeMillis() - mStartTime));
+            mOut.writeInt(windowRect.left);
+            mOut.writeInt(windowRect.top);
+            mOut.writeInt(windowRect.right);
+            mOut.writeInt(windowRect.bottom);
+            mOut.writeInt(visibility);
+        } catch (IOException e) {
+            // ByteArrayOutputStream never throws
+        }
+    }
+
+    /**
+     * Write one sample.
+     */
+    private void writeSample(long timeDelta, float rawX, float rawY) throws IOException {
+        mOut.writeShort((int) Math.max(timeDelta, Short.MIN_VALUE));
+        mOut.writeFloat(rawX);
+        mOut.writeFloat(rawY);
+    }
+
+    /**
+     * Get the encoded trace.
+     *
+     * @return trace
+     */
+    byte[] toByteArray() {
+        return mBuffer.toByteArray();
+    }
+}
@@ -0,0 +1,358 @@
+/**
+ * Copyright 2015 RECRUIT LIFESTYLE CO., LTD.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.taptap.common.widget.floatview;
+
+import android.graphics.Rect;
+import android.os.Debug;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.view.MotionEvent;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Replays a trace written by {@link GestureTraceRecorder}.
+ * The events are dispatched on the main thread with the recorded spacing, and their timestamps are rebased
+ * onto the start of the replay, so velocity and prediction see exactly the recorded times regardless of scheduling jitter.
+ * Reports the thread CPU time of each event and the WindowManager calls until the next event,
+ * and checks the calls of the whole replay against a {@link WindowOperationBudget}.
+ */
+class GestureTraceReplayer implements Runnable {
+
+    /**
+     * Time to wait for animations after the last event(ms)
+     */
+    private static final long SETTLE_MILLIS = 500L;
+
+    /**
+     * Target of the replay.
+     */
+    interface Target {
+
+        /**
+         * @param index index of the FloatingView at recording time
+         * @return FloatingView(null if it does not exist)
+         */
+        FloatingView getFloatingView(int index);
+
+        /**
+         * Deliver a screen change.
+         *
+         * @param windowRect rect of the window
+         * @param visibility system UI visibility
+         */
+        void onScreenChanged(Rect windowRect, int visibility);
+
+        /**
+         * @return WindowManager counting the calls of all windows of the target
+         */
+        CountingWindowManager getWindowManager();
+
+        /**
+         * @return refresh rate of the display(Hz)
+         */
+        float getRefreshRate();
+
+        /**
+         * Called when the replay finished or was cancelled.
+         *
+         * @param report {@link GestureReplayReport}
+         */
+        void onReplayFinished(GestureReplayReport report);
+    }
+
+    /**
+     * Decoded record.
+     */
+    private static final class Record {
+        byte type;
+        int viewIndex;
+        int action;
+        long downTime;
+        long eventTime;
+        long[] sampleTimes;
+        float[] sampleX;
+        float[] sampleY;
+        Rect windowRect;
+        int visibility;
+    }
+
+    /**
+     * Records replayed(FloatingView touch events and screen changes)
+     */
+    private final List<Record> mRecords;
+
+    /**
+     * Target
+     */
+    private final Target mTarget;
+
+    /**
+     * Handler of the main thread
+     */
+    private final Handler mHandler;
+
+    /**
+     * Thread CPU time of each record(ns)
+     */
+    private final long[] mCpuTimeNanos;
+
+    /**
+     * WindowManager calls from each record until the next one
+     */
+    private final int[] mWindowOperationCounts;
+
+    /**
+     * Location of the FloatingView on the screen
+     */
+    private final int[] mLocation;
+
+    /**
+     * Budget of the whole replay(null if not checked)
+     */
+    private final WindowOperationBudget mBudget;
+
+    /**
+     * addView calls when the replay started
+     */
+    private int mStartAddViewCount;
+
+    /**
+     * updateViewLayout calls when the replay started
+     */
+    private int mStartUpdateViewLayoutCount;
+
+    /**
+     * removeView calls when the replay started
+     */
+    private int mStartRemoveViewCount;
+
+    /**
+     * Touch events dispatched to a FloatingView
+     */
+    private int mTouchEventCount;
+
+    /**
+     * Start time of the replay(ms)
+     */
+    private long mBaseTime;
+
+    /**
+     * Index of the next record
+     */
+    private int mIndex;
+
+    /**
+     * WindowManager calls when the previous record was dispatched
+     */
+    private int mMarkCount;
+
+    /**
+     * Finished flag
+     */
+    private boolean mIsFinished;
+
+    /**
+     * Constructor
+     *
+     * @param trace  trace written by {@link GestureTraceRecorder}
+     * @param budget budget of the whole replay(null if not checked)
+     * @param target Target
+     * @throws IllegalArgumentException if the trace is broken
+     */
+    GestureTraceReplayer(byte[] trace, WindowOperationBudget budget, Target target) {
+        mRecords = decode(trace);
+        mBudget = budget;
+        mTarget = target;
+        mHandler = new Handler(Looper.getMainLooper());
+        mCpuTimeNanos = new long[mRecords.size()];
+        mWindowOperationCounts = new int[mRecords.size()];
+        mLocation = new int[2];
+    }
+
+    /**
+     * Start the replay.
+     */
+    void start() {
+        mBaseTime = SystemClock.uptimeMillis();
+        mIndex = 0;
+        mTouchEventCount = 0;
+        final CountingWindowManager windowManager = mTarget.getWindowManager();
+        mStartAddViewCount = windowManager.getAddViewCount();
+        mStartUpdateViewLayoutCount = windowManager.getUpdateViewLayoutCount();
+        mStartRemoveViewCount = windowManager.getRemoveViewCount();
+        mMarkCount = windowManager.getTotalCount();
+        scheduleNext();
+    }
+
+    /**
+     * Cancel the replay. The report contains the records dispatched so far and is not checked against the budget.
+     */
+    void cancel() {
+        mHandler.removeCallbacks(this);
+        finish(null);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void run() {
+        if (mIndex == mRecords.size()) {
+            finish(mBudget);
+            return;
+        }
+        final int index = mIndex++;
+        final int count = mTarget.getWindowManager().getTotalCount();
+        if (index > 0) {
+            mWindowOperationCounts[index - 1] = count - mMarkCount;
+        }
+        mMarkCount = count;
+
+        final Record record = mRecords.get(index);
+        final long startCpuTime = Debug.threadCpuTimeNanos();
+        if (record.type == GestureTraceRecorder.RECORD_TOUCH) {
+            dispatchTouch(record);
+        } else {
+            mTarget.onScreenChanged(record.windowRect, record.visibility);
+        }
+        mCpuTimeNanos[index] = Debug.threadCpuTimeNanos() - startCpuTime;
+        scheduleNext();
+    }
+
+    /**
+     * Dispatch a touch record to its FloatingView.
+     * The samples are screen coordinates, so the local coordinates are made relative to the current location of the view
+     * (the raw coordinates stay on the screen).
+     */
+    private void dispatchTouch(Record record) {
+        final FloatingView floatingView = mTarget.getFloatingView(record.viewIndex);
+        if (floatingView == null) {
+            return;
+        }
+        final int last = record.sampleTimes.length - 1;
+        final long downTime = mBaseTime + record.downTime;
+        final MotionEvent event = MotionEvent.obtain(downTime, mBaseTime + record.eventTime + record.sampleTimes[0],
+                record.action, record.sampleX[0], record.sampleY[0], 0);
+        for (int i = 1; i <= last; i++) {
+            event.addBatch(mBaseTime + record.eventTime + record.sampleTimes[i], record.sampleX[i], record.sampleY[i], 1.0f, 1.0f, 0);
+        }
+        floatingView.getLocationOnScreen(mLocation);
+        event.offsetLocation(-mLocation[0], -mLocation[1]);
+        floatingView.dispatchTouchEvent(event);
+        event.recycle();
+        mTouchEventCount++;
+    }
+
+    /**
+     * Post the next record, or the end of the replay after the animations settled.
+     */
+    private void scheduleNext() {
+        if (mIndex < mRecords.size()) {
+            mHandler.postAtTime(this, mBaseTime + mRecords.get(mIndex).eventTime);
+        } else {
+            mHandler.postDelayed(this, SETTLE_MILLIS);
+        }
+    }
+
+    /**
+     * Aggregate and report.
+     *
+     * @param budget budget to check(null if not checked)
+     */
+    private void finish(WindowOperationBudget budget) {
+        if (mIsFinished) {
+            return;
+        }
+        mIsFinished = true;
+        final CountingWindowManager windowManager = mTarget.getWindowManager();
+        if (mIndex > 0) {
+            mWindowOperationCounts[mIndex - 1] = windowManager.getTotalCount() - mMarkCount;
+        }
+        final long[] cpuTimeNanos = new long[mIndex];
+        final int[] windowOperationCounts = new int[mIndex];
+        System.arraycopy(mCpuTimeNanos, 0, cpuTimeNanos, 0, mIndex);
+        System.arraycopy(mWindowOperationCounts, 0, windowOperationCounts, 0, mIndex);
+        // upper bound of the frames drawn since the start(the settle time included)
+        final long elapsedMillis = SystemClock.uptimeMillis() - mBaseTime;
+        final int frameCount = (int) Math.ceil(elapsedMillis * mTarget.getRefreshRate() / 1000f);
+        mTarget.onReplayFinished(new GestureReplayReport(cpuTimeNanos, windowOperationCounts,
+                windowManager.getAddViewCount() - mStartAddViewCount,
+                windowManager.getUpdateViewLayoutCount() - mStartUpdateViewLayoutCount,
+                windowManager.getRemoveViewCount() - mStartRemoveViewCount,
+                mTouchEventCount, frameCount, budget));
+    }
+
+    /**
+     * Decode the trace. Only the events seen by FloatingView are replayed,
+     * the events seen by FloatingViewManager#onTouch are derived from them.
+     *
+     * @param trace trace
+     * @return records
+     */
+    private static List<Record> decode(byte[] trace) {
+        final List<Record> records = new ArrayList<>();
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(trace));
+        try {
+            if (in.readInt() != GestureTraceRecorder.MAGIC || in.readByte() != GestureTraceRecorder.VERSION) {
+                throw new IllegalArgumentException("Unsupported gesture trace");
+            }
+            // widthPixels, heightPixels, density
+            in.readInt();
+            in.readInt();
+            in.readFloat();
+            while (in.available() > 0) {
+                final Record record = new Record();
+                record.type = in.readByte();
+                if (record.type == GestureTraceRecorder.RECORD_TOUCH) {
+                    final byte source = in.readByte();
+                    record.viewIndex = in.readByte();
+                    record.action = in.readShort();
+                    record.downTime = in.readInt();
+                    record.eventTime = in.readInt();
+                    final int sampleCount = in.readShort() + 1;
+                    record.sampleTimes = new long[sampleCount];
+                    record.sampleX = new float[sampleCount];
+                    record.sampleY = new float[sampleCount];
+                    for (int i = 0; i < sampleCount; i++) {
+                        record.sampleTimes[i] = in.readShort();
+                        record.sampleX[i] = in.readFloat();
+                        record.sampleY[i] = in.readFloat();
+                    }
+                    if (source != GestureTraceRecorder.SOURCE_FLOATING_VIEW) {
+                        continue;
+                    }
+                } else if (record.type == GestureTraceRecorder.RECORD_SCREEN_CHANGED) {
+                    record.eventTime = in.readInt();
+                    record.windowRect = new Rect(in.readInt(), in.readInt(), in.readInt(), in.readInt());
+                    record.visibility = in.readInt();
+                } else {
+                    throw new IllegalArgumentException("Unknown record type:" + record.type);
+                }
+                records.add(record);
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Truncated gesture trace", e);
+        }
+        return records;
+    }
+}
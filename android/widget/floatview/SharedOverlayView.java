@@ -0,0 +1,277 @@
+/**
+ * Copyright 2015 RECRUIT LIFESTYLE CO., LTD.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.taptap.common.widget.floatview;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
+import android.graphics.Region;
+import android.os.Build;
+import android.view.Gravity;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewTreeObserver;
+import android.view.WindowManager;
+import android.widget.FrameLayout;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+/**
+ * 一个窗口承载所有FloatingView的容器。
+ * FloatingView通过translationX/Y移动(RenderThread属性，没有WindowManager的IPC)。
+ * 容器之外的触摸通过Touchable Region传递到下面的窗口。
+ */
+class SharedOverlayView extends FrameLayout {
+
+    /**
+     * ViewTreeObserver.InternalInsetsInfo.TOUCHABLE_INSETS_REGION
+     */
+    private static final int TOUCHABLE_INSETS_REGION = 3;
+
+    /**
+     * Overlay Type
+     */
+    private static final int OVERLAY_TYPE;
+
+    /**
+     * ViewTreeObserver#addOnComputeInternalInsetsListener(hidden API)
+     */
+    private static Method sAddInsetsListenerMethod;
+
+    /**
+     * ViewTreeObserver$OnComputeInternalInsetsListener(hidden API)
+     */
+    private static Class<?> sInsetsListenerClass;
+
+    /**
+     * InternalInsetsInfo#setTouchableInsets(hidden API)
+     */
+    private static Method sSetTouchableInsetsMethod;
+
+    /**
+     * InternalInsetsInfo#touchableRegion(hidden API)
+     */
+    private static Field sTouchableRegionField;
+
+    /**
+     * WindowManager.LayoutParams
+     */
+    private final WindowManager.LayoutParams mParams;
+
+    /**
+     * 可以触摸的区域(只在FloatingView的组合或静止位置变化时更新)
+     */
+    private final Region mTouchableRegion;
+
+    /**
+     * 加上移动中的FloatingView的区域(动画中每帧计算)
+     */
+    private final Region mLiveTouchableRegion;
+
+    /**
+     * 计算用的Rect
+     */
+    private final Rect mTempRect;
+
+    /**
+     * 需要重新计算Touchable Region的标志
+     */
+    private boolean mIsTouchableRegionDirty;
+
+    /**
+     * 注册了Touchable Region的计算的标志
+     */
+    private boolean mIsTouchableRegionEnabled;
+
+    static {
+        if (Build.VERSION.SDK_INT <= Build.VERSION_CODES.N_MR1) {
+            OVERLAY_TYPE = WindowManager.LayoutParams.TYPE_PRIORITY_PHONE;
+        } else {
+            OVERLAY_TYPE = WindowManager.LayoutParams.TYPE_APPLICATION_OVERLAY;
+        }
+
+        try {
+            @SuppressLint("PrivateApi")
+            final Class<?> listenerClass = Class.forName("android.view.ViewTreeObserver$OnComputeInternalInsetsListener");
+            @SuppressLint("PrivateApi")
+            final Class<?> infoClass = Class.forName("android.view.ViewTreeObserver$InternalInsetsInfo");
+            sAddInsetsListenerMethod = ViewTreeObserver.class.getMethod("addOnComputeInternalInsetsListener", listenerClass);
+            sSetTouchableInsetsMethod = infoClass.getMethod("setTouchableInsets", int.class);
+            sTouchableRegionField = infoClass.getField("touchableRegion");
+            sInsetsListenerClass = listenerClass;
+        } catch (Exception e) {
+            sInsetsListenerClass = null;
+        }
+    }
+
+    /**
+     * 检查是否可以使用共享窗口(需要设置Touchable Region)。
+     * Android 12以后不可信触摸的遮挡判定使用窗口的frame而不是Touchable Region，
+     * 全屏的共享窗口会挡住下面其他App的所有触摸，所以不使用。
+     *
+     * @return 可以使用时为true
+     */
+    static boolean isSupported() {
+        return Build.VERSION.SDK_INT < Build.VERSION_CODES.S && sInsetsListenerClass != null;
+    }
+
+    /**
+     * 构造器
+     *
+     * @param context {@link Context}
+     */
+    SharedOverlayView(Context context) {
+        super(context);
+        mParams = new WindowManager.LayoutParams();
+        mParams.width = ViewGroup.LayoutParams.MATCH_PARENT;
+        mParams.height = ViewGroup.LayoutParams.MATCH_PARENT;
+        mParams.type = OVERLAY_TYPE;
+        mParams.flags = WindowManager.LayoutParams.FLAG_NOT_FOCUSABLE |
+                WindowManager.LayoutParams.FLAG_LAYOUT_NO_LIMITS |
+                WindowManager.LayoutParams.FLAG_NOT_TOUCH_MODAL |
+                WindowManager.LayoutParams.FLAG_HARDWARE_ACCELERATED;
+        mParams.format = PixelFormat.TRANSLUCENT;
+        mParams.gravity = Gravity.LEFT | Gravity.BOTTOM;
+        mTouchableRegion = new Region();
+        mLiveTouchableRegion = new Region();
+        mTempRect = new Rect();
+        mIsTouchableRegionDirty = true;
+        setClipChildren(false);
+        if (isSupported()) {
+            mIsTouchableRegionEnabled = registerInsetsListener();
+        }
+    }
+
+    /**
+     * 检查是否设置了Touchable Region。
+     * 没有设置的情况下整个窗口都会接受触摸，不能作为共享窗口使用。
+     *
+     * @return 设置了的情况下为true
+     */
+    boolean isTouchableRegionEnabled() {
+        return mIsTouchableRegionEnabled;
+    }
+
+    /**
+     * 注册Touchable Region的计算。
+     *
+     * @return 注册成功时为true
+     */
+    private boolean registerInsetsListener() {
+        final Object listener = Proxy.newProxyInstance(sInsetsListenerClass.getClassLoader(), new Class<?>[]{sInsetsListenerClass}, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if ("onComputeInternalInsets".equals(method.getName())) {
+                    onComputeInternalInsets(args[0]);
+                    return null;
+                }
+                // equals/hashCode/toString
+                if ("equals".equals(method.getName())) {
+                    return proxy == args[0];
+                }
+                if ("hashCode".equals(method.getName())) {
+                    return System.identityHashCode(proxy);
+                }
+                return "SharedOverlayView$InsetsListener";
+            }
+        });
+        try {
+            sAddInsetsListenerMethod.invoke(getViewTreeObserver(), listener);
+            return true;
+        } catch (Exception e) {
+            // 注册失败时整个窗口都可以触摸
+            return false;
+        }
+    }
+
+    /**
+     * 设置Touchable Region。
+     *
+     * @param insetsInfo ViewTreeObserver.InternalInsetsInfo
+     */
+    private void onComputeInternalInsets(Object insetsInfo) throws Exception {
+        if (mIsTouchableRegionDirty) {
+            mIsTouchableRegionDirty = false;
+            mTouchableRegion.setEmpty();
+            final int childCount = getChildCount();
+            for (int i = 0; i < childCount; i++) {
+                final View child = getChildAt(i);
+                if (child instanceof FloatingView && child.getVisibility() == View.VISIBLE) {
+                    ((FloatingView) child).getRestingRect(mTempRect);
+                    // 左下原点 -> 窗口坐标
+                    mTempRect.set(mTempRect.left, getHeight() - mTempRect.bottom, mTempRect.right, getHeight() - mTempRect.top);
+                    mTouchableRegion.union(mTempRect);
+                }
+            }
+        }
+        // 动画中的FloatingView在移动途中也可以触摸(translation改变时每帧都会重新计算)
+        mLiveTouchableRegion.set(mTouchableRegion);
+        final int childCount = getChildCount();
+        for (int i = 0; i < childCount; i++) {
+            final View child = getChildAt(i);
+            if (child instanceof FloatingView && child.getVisibility() == View.VISIBLE && !((FloatingView) child).isAtRest()) {
+                child.getHitRect(mTempRect);
+                mLiveTouchableRegion.union(mTempRect);
+            }
+        }
+        sSetTouchableInsetsMethod.invoke(insetsInfo, TOUCHABLE_INSETS_REGION);
+        ((Region) sTouchableRegionField.get(insetsInfo)).set(mLiveTouchableRegion);
+    }
+
+    /**
+     * 在FloatingView的组合或静止位置变化时调用。
+     */
+    void invalidateTouchableRegion() {
+        mIsTouchableRegionDirty = true;
+        requestLayout();
+    }
+
+    /**
+     * 添加FloatingView。
+     *
+     * @param floatingView FloatingView
+     */
+    void addFloatingView(FloatingView floatingView) {
+        final LayoutParams params = new LayoutParams(ViewGroup.LayoutParams.WRAP_CONTENT, ViewGroup.LayoutParams.WRAP_CONTENT);
+        params.gravity = Gravity.LEFT | Gravity.BOTTOM;
+        addView(floatingView, params);
+        invalidateTouchableRegion();
+    }
+
+    /**
+     * 删除FloatingView。
+     *
+     * @param floatingView FloatingView
+     */
+    void removeFloatingView(FloatingView floatingView) {
+        removeView(floatingView);
+        invalidateTouchableRegion();
+    }
+
+    /**
+     * WindowManager.LayoutParams
+     *
+     * @return WindowManager.LayoutParams
+     */
+    WindowManager.LayoutParams getWindowLayoutParams() {
+        return mParams;
+    }
+}
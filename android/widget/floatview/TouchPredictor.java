@@ -0,0 +1,91 @@
+/**
+ * Copyright 2015 RECRUIT LIFESTYLE CO., LTD.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.taptap.common.widget.floatview;
+
+/**
+ * Extrapolates the touch position a short time ahead from the fitted velocity and acceleration.
+ * Used to hide the latency between the finger and the FloatingView while dragging.
+ */
+class TouchPredictor {
+
+    /**
+     * Upper limit of the prediction horizon(ms)
+     */
+    static final long MAX_HORIZON_MILLIS = 50L;
+
+    /**
+     * Predicted X coordinate
+     */
+    private float mPredictedX;
+
+    /**
+     * Predicted Y coordinate
+     */
+    private float mPredictedY;
+
+    /**
+     * Predict the position after the horizon from the newest sample.
+     * The result is returned by {@link #getPredictedX()} and {@link #getPredictedY()}.
+     *
+     * @param samples       touch samples of the current gesture
+     * @param horizonMillis prediction horizon(ms)
+     */
+    void predict(TouchSampleBuffer samples, long horizonMillis) {
+        if (samples.size() == 0) {
+            return;
+        }
+        mPredictedX = samples.getLatestX();
+        mPredictedY = samples.getLatestY();
+        if (horizonMillis <= 0 || !samples.fit()) {
+            return;
+        }
+        final float horizon = Math.min(horizonMillis, MAX_HORIZON_MILLIS);
+        mPredictedX += extrapolate(samples.getVelocityX(), samples.getAccelerationX(), horizon);
+        mPredictedY += extrapolate(samples.getVelocityY(), samples.getAccelerationY(), horizon);
+    }
+
+    /**
+     * Displacement after the horizon.
+     * Deceleration never reverses the direction of movement.
+     *
+     * @param velocity     velocity(px/ms)
+     * @param acceleration acceleration(px/ms^2)
+     * @param horizon      horizon(ms)
+     * @return displacement(px)
+     */
+    private static float extrapolate(float velocity, float acceleration, float horizon) {
+        final float displacement = velocity * horizon + 0.5f * acceleration * horizon * horizon;
+        if (displacement * velocity < 0) {
+            return 0;
+        }
+        return displacement;
+    }
+
+    /**
+     * @return predicted screen X coordinate
+     */
+    float getPredictedX() {
+        return mPredictedX;
+    }
+
+    /**
+     * @return predicted screen Y coordinate
+     */
+    float getPredictedY() {
+        return mPredictedY;
+    }
+}
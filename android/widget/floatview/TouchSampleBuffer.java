@@ -0,0 +1,292 @@
+/**
+ * Copyright 2015 RECRUIT LIFESTYLE CO., LTD.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.taptap.common.widget.floatview;
+
+import android.view.MotionEvent;
+
+/**
+ * Fixed-capacity ring buffer of touch samples in screen coordinates.
+ * Consumes every historical sample of a MotionEvent and estimates velocity/acceleration
+ * with a quadratic least squares fit, without allocation.
+ */
+class TouchSampleBuffer {
+
+    /**
+     * Number of samples kept(about 260ms at 240Hz)
+     */
+    private static final int CAPACITY = 64;
+
+    /**
+     * Only samples within this time from the newest sample are used for the fit(ms)
+     */
+    private static final long FIT_HORIZON_MILLIS = 100L;
+
+    /**
+     * If the pointer did not move for this time, it is considered stopped(ms)
+     */
+    private static final long ASSUME_POINTER_STOPPED_MILLIS = 40L;
+
+    /**
+     * X coordinates
+     */
+    private final float[] mX = new float[CAPACITY];
+
+    /**
+     * Y coordinates
+     */
+    private final float[] mY = new float[CAPACITY];
+
+    /**
+     * Event times(ms)
+     */
+    private final long[] mTime = new long[CAPACITY];
+
+    /**
+     * Index of the newest sample
+     */
+    private int mHead = -1;
+
+    /**
+     * Number of valid samples
+     */
+    private int mSize;
+
+    /**
+     * X velocity(px/ms)
+     */
+    private float mVelocityX;
+
+    /**
+     * Y velocity(px/ms)
+     */
+    private float mVelocityY;
+
+    /**
+     * X acceleration(px/ms^2)
+     */
+    private float mAccelerationX;
+
+    /**
+     * Y acceleration(px/ms^2)
+     */
+    private float mAccelerationY;
+
+    /**
+     * X velocity computed by {@link #computeCurrentVelocity(int, float, long)}
+     */
+    private float mXVelocity;
+
+    /**
+     * Y velocity computed by {@link #computeCurrentVelocity(int, float, long)}
+     */
+    private float mYVelocity;
+
+    /**
+     * Clear all samples.
+     */
+    void clear() {
+        mHead = -1;
+        mSize = 0;
+        mVelocityX = 0;
+        mVelocityY = 0;
+        mAccelerationX = 0;
+        mAccelerationY = 0;
+        mXVelocity = 0;
+        mYVelocity = 0;
+    }
+
+    /**
+     * Add all samples(historical samples and the current sample) of the event.
+     *
+     * @param event {@link MotionEvent}
+     */
+    void addMovement(MotionEvent event) {
+        // 历史样本只有局部坐标，用本次事件的偏移还原为屏幕坐标
+        final float offsetX = event.getRawX() - event.getX();
+        final float offsetY = event.getRawY() - event.getY();
+        final int historySize = event.getHistorySize();
+        for (int i = 0; i < historySize; i++) {
+            add(event.getHistoricalX(i) + offsetX, event.getHistoricalY(i) + offsetY, event.getHistoricalEventTime(i));
+        }
+        add(event.getRawX(), event.getRawY(), event.getEventTime());
+    }
+
+    /**
+     * Add a sample.
+     *
+     * @param x    screen X coordinate
+     * @param y    screen Y coordinate
+     * @param time event time(ms)
+     */
+    void add(float x, float y, long time) {
+        mHead = (mHead + 1) % CAPACITY;
+        mX[mHead] = x;
+        mY[mHead] = y;
+        mTime[mHead] = time;
+        mSize = Math.min(mSize + 1, CAPACITY);
+    }
+
+    /**
+     * @return number of samples
+     */
+    int size() {
+        return mSize;
+    }
+
+    /**
+     * @return X coordinate of the newest sample
+     */
+    float getLatestX() {
+        return mX[mHead];
+    }
+
+    /**
+     * @return Y coordinate of the newest sample
+     */
+    float getLatestY() {
+        return mY[mHead];
+    }
+
+    /**
+     * Fit x(t) and y(t) to a quadratic curve around the newest sample.
+     * The result is returned by {@link #getVelocityX()}, {@link #getAccelerationX()} and so on.
+     *
+     * @return false if there are not enough samples
+     */
+    boolean fit() {
+        mVelocityX = 0;
+        mVelocityY = 0;
+        mAccelerationX = 0;
+        mAccelerationY = 0;
+        if (mSize < 2) {
+            return false;
+        }
+        final long newestTime = mTime[mHead];
+        final int previous = (mHead - 1 + CAPACITY) % CAPACITY;
+        if (newestTime - mTime[previous] > ASSUME_POINTER_STOPPED_MILLIS) {
+            return false;
+        }
+
+        // 正规方程的各项(t以最新样本为原点)
+        double s0 = 0, s1 = 0, s2 = 0, s3 = 0, s4 = 0;
+        double sx0 = 0, sx1 = 0, sx2 = 0, sy0 = 0, sy1 = 0, sy2 = 0;
+        int count = 0;
+        for (int i = 0; i < mSize; i++) {
+            final int index = (mHead - i + CAPACITY) % CAPACITY;
+            final double t = mTime[index] - newestTime;
+            if (-t > FIT_HORIZON_MILLIS) {
+                break;
+            }
+            final double t2 = t * t;
+            final double x = mX[index];
+            final double y = mY[index];
+            s0 += 1;
+            s1 += t;
+            s2 += t2;
+            s3 += t2 * t;
+            s4 += t2 * t2;
+            sx0 += x;
+            sx1 += x * t;
+            sx2 += x * t2;
+            sy0 += y;
+            sy1 += y * t;
+            sy2 += y * t2;
+            count++;
+        }
+        if (count < 2) {
+            return false;
+        }
+
+        // 二次拟合(Cramer's rule)，样本不足或退化时使用一次拟合
+        final double det = s0 * (s2 * s4 - s3 * s3) - s1 * (s1 * s4 - s3 * s2) + s2 * (s1 * s3 - s2 * s2);
+        if (count >= 3 && Math.abs(det) > 1e-6) {
+            mVelocityX = (float) ((s0 * (sx1 * s4 - s3 * sx2) - sx0 * (s1 * s4 - s3 * s2) + s2 * (s1 * sx2 - sx1 * s2)) / det);
+            mVelocityY = (float) ((s0 * (sy1 * s4 - s3 * sy2) - sy0 * (s1 * s4 - s3 * s2) + s2 * (s1 * sy2 - sy1 * s2)) / det);
+            mAccelerationX = (float) (2 * (s0 * (s2 * sx2 - sx1 * s3) - s1 * (s1 * sx2 - sx1 * s2) + sx0 * (s1 * s3 - s2 * s2)) / det);
+            mAccelerationY = (float) (2 * (s0 * (s2 * sy2 - sy1 * s3) - s1 * (s1 * sy2 - sy1 * s2) + sy0 * (s1 * s3 - s2 * s2)) / det);
+            return true;
+        }
+        final double linearDet = s0 * s2 - s1 * s1;
+        if (Math.abs(linearDet) <= 1e-6) {
+            return false;
+        }
+        mVelocityX = (float) ((s0 * sx1 - s1 * sx0) / linearDet);
+        mVelocityY = (float) ((s0 * sy1 - s1 * sy0) / linearDet);
+        return true;
+    }
+
+    /**
+     * Compute the current velocity like {@link android.view.VelocityTracker#computeCurrentVelocity(int, float)}.
+     *
+     * @param units       1 is px/ms, 1000 is px/s
+     * @param maxVelocity maximum velocity(in units)
+     * @param eventTime   time of the ACTION_UP(ms)
+     */
+    void computeCurrentVelocity(int units, float maxVelocity, long eventTime) {
+        // 松开之前停止了的话速度为0
+        if (mSize == 0 || eventTime - mTime[mHead] > ASSUME_POINTER_STOPPED_MILLIS) {
+            mXVelocity = 0;
+            mYVelocity = 0;
+            return;
+        }
+        fit();
+        mXVelocity = Math.min(Math.max(mVelocityX * units, -maxVelocity), maxVelocity);
+        mYVelocity = Math.min(Math.max(mVelocityY * units, -maxVelocity), maxVelocity);
+    }
+
+    /**
+     * @return X velocity computed by {@link #computeCurrentVelocity(int, float, long)}
+     */
+    float getXVelocity() {
+        return mXVelocity;
+    }
+
+    /**
+     * @return Y velocity computed by {@link #computeCurrentVelocity(int, float, long)}
+     */
+    float getYVelocity() {
+        return mYVelocity;
+    }
+
+    /**
+     * @return X velocity of the last {@link #fit()}(px/ms)
+     */
+    float getVelocityX() {
+        return mVelocityX;
+    }
+
+    /**
+     * @return Y velocity of the last {@link #fit()}(px/ms)
+     */
+    float getVelocityY() {
+        return mVelocityY;
+    }
+
+    /**
+     * @return X acceleration of the last {@link #fit()}(px/ms^2)
+     */
+    float getAccelerationX() {
+        return mAccelerationX;
+    }
+
+    /**
+     * @return Y acceleration of the last {@link #fit()}(px/ms^2)
+     */
+    float getAccelerationY() {
+        return mAccelerationY;
+    }
+}
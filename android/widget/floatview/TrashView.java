@@ -111,6 +111,11 @@ class TrashView extends FrameLayout implements ViewTreeObserver.OnPreDrawListene
      */
     private final WindowManager mWindowManager;
 
+    /**
+     * 显示器的状态缓存
+     */
+    private final FloatingDisplayState mDisplayState;
+
     /**
      * LayoutParams
      */
@@ -186,6 +191,16 @@ class TrashView extends FrameLayout implements ViewTreeObserver.OnPreDrawListene
      */
     private boolean mIsEnabled;
 
+    /**
+     * Drag metrics recorder(null if disabled)
+     */
+    private FloatingViewMetrics mMetricsRecorder;
+
+    /**
+     * 动画期间的硬件层
+     */
+    private final AnimationLayerPolicy mLayerPolicy;
+
     static {
         if (Build.VERSION.SDK_INT <= Build.VERSION_CODES.N_MR1) {
             OVERLAY_TYPE = WindowManager.LayoutParams.TYPE_PRIORITY_PHONE;
@@ -197,14 +212,19 @@ class TrashView extends FrameLayout implements ViewTreeObserver.OnPreDrawListene
     /**
      * 构造器
      *
-     * @param context Context
+     * @param context      Context
+     * @param ticker       FloatingAnimationTicker
+     * @param layerPolicy  AnimationLayerPolicy
+     * @param displayState FloatingDisplayState
      */
-    TrashView(Context context) {
+    TrashView(Context context, FloatingAnimationTicker ticker, AnimationLayerPolicy layerPolicy, FloatingDisplayState displayState) {
         super(context);
+        mLayerPolicy = layerPolicy;
         mWindowManager = (WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
+        mDisplayState = displayState;
         mMetrics = new DisplayMetrics();
-        mWindowManager.getDefaultDisplay().getMetrics(mMetrics);
-        mAnimationHandler = new AnimationHandler(this);
+        mDisplayState.getMetrics(mMetrics);
+        mAnimationHandler = new AnimationHandler(this, ticker);
         mIsEnabled = true;
 
         mParams = new WindowManager.LayoutParams();
@@ -277,9 +297,20 @@ class TrashView extends FrameLayout implements ViewTreeObserver.OnPreDrawListene
     @Override
     protected void onConfigurationChanged(Configuration newConfig) {
         super.onConfigurationChanged(newConfig);
+        // DisplayListener的通知可能晚于这里，所以同步刷新
+        mDisplayState.refresh();
         updateViewLayout();
     }
 
+    /**
+     * 显示器的状态变化时调整布局(粘贴在window中的情况)。
+     */
+    void onDisplayChanged() {
+        if (getParent() != null) {
+            updateViewLayout();
+        }
+    }
+
     /**
      * 进行初次绘图时的坐标设定。<br/>
      * 因为初次表示的时候有一瞬间删除图标被显示的事象。
@@ -304,7 +335,7 @@ class TrashView extends FrameLayout implements ViewTreeObserver.OnPreDrawListene
      * 从画面尺寸决定自己的位置。
      */
     private void updateViewLayout() {
-        mWindowManager.getDefaultDisplay().getMetrics(mMetrics);
+        mDisplayState.getMetrics(mMetrics);
         mParams.x = (mMetrics.widthPixels - getWidth()) / 2;
         mParams.y = 0;
 
@@ -313,6 +344,9 @@ class TrashView extends FrameLayout implements ViewTreeObserver.OnPreDrawListene
         mAnimationHandler.onUpdateViewLayout();
 
         mWindowManager.updateViewLayout(this, mParams);
+        if (mMetricsRecorder != null) {
+            mMetricsRecorder.onWindowOperation();
+        }
     }
 
     /**
@@ -320,8 +354,8 @@ class TrashView extends FrameLayout implements ViewTreeObserver.OnPreDrawListene
      */
     void dismiss() {
         // 停止动画
-        mAnimationHandler.removeMessages(ANIMATION_OPEN);
-        mAnimationHandler.removeMessages(ANIMATION_CLOSE);
+        mAnimationHandler.cancelAnimation(ANIMATION_OPEN);
+        mAnimationHandler.cancelAnimation(ANIMATION_CLOSE);
         mAnimationHandler.sendAnimationMessage(ANIMATION_FORCE_CLOSE);
         // 停止放大动画
         setScaleTrashIconImmediately(false);
@@ -372,10 +406,12 @@ class TrashView extends FrameLayout implements ViewTreeObserver.OnPreDrawListene
         mEnterScaleAnimator = ObjectAnimator.ofPropertyValuesHolder(mActionTrashIconView, PropertyValuesHolder.ofFloat(ImageView.SCALE_X, mActionTrashIconMaxScale), PropertyValuesHolder.ofFloat(ImageView.SCALE_Y, mActionTrashIconMaxScale));
         mEnterScaleAnimator.setInterpolator(new OvershootInterpolator());
         mEnterScaleAnimator.setDuration(TRASH_ICON_SCALE_DURATION_MILLIS);
+        mEnterScaleAnimator.addListener(mLayerPolicy.newAnimatorListener(mActionTrashIconView));
         // Exit动画制作
         mExitScaleAnimator = ObjectAnimator.ofPropertyValuesHolder(mActionTrashIconView, PropertyValuesHolder.ofFloat(ImageView.SCALE_X, 1.0f), PropertyValuesHolder.ofFloat(ImageView.SCALE_Y, 1.0f));
         mExitScaleAnimator.setInterpolator(new OvershootInterpolator());
         mExitScaleAnimator.setDuration(TRASH_ICON_SCALE_DURATION_MILLIS);
+        mExitScaleAnimator.addListener(mLayerPolicy.newAnimatorListener(mActionTrashIconView));
     }
 
     /**
@@ -549,6 +585,15 @@ class TrashView extends FrameLayout implements ViewTreeObserver.OnPreDrawListene
         mTrashViewListener = listener;
     }
 
+    /**
+     * Set the drag metrics recorder.
+     *
+     * @param recorder {@link FloatingViewMetrics}(null if disabled)
+     */
+    void setMetricsRecorder(FloatingViewMetrics recorder) {
+        mMetricsRecorder = recorder;
+    }
+
     /**
      * WindowManager.LayoutParams
      *
@@ -571,8 +616,8 @@ class TrashView extends FrameLayout implements ViewTreeObserver.OnPreDrawListene
         if (action == MotionEvent.ACTION_DOWN) {
             mAnimationHandler.updateTargetPosition(x, y);
             // 长按等待处理
-            mAnimationHandler.removeMessages(ANIMATION_CLOSE);
-            mAnimationHandler.sendAnimationMessageDelayed(ANIMATION_OPEN, LONG_PRESS_TIMEOUT);
+            mAnimationHandler.cancelAnimation(ANIMATION_CLOSE);
+            mAnimationHandler.scheduleAnimation(ANIMATION_OPEN, LONG_PRESS_TIMEOUT);
         }
         // 移动
         else if (action == MotionEvent.ACTION_MOVE) {
@@ -580,7 +625,7 @@ class TrashView extends FrameLayout implements ViewTreeObserver.OnPreDrawListene
             // 只在还没有开始开放动画的情况下执行
             if (!mAnimationHandler.isAnimationStarted(ANIMATION_OPEN)) {
                 // 删除长按的信息
-                mAnimationHandler.removeMessages(ANIMATION_OPEN);
+                mAnimationHandler.cancelAnimation(ANIMATION_OPEN);
                 // 开放
                 mAnimationHandler.sendAnimationMessage(ANIMATION_OPEN);
             }
@@ -588,7 +633,7 @@ class TrashView extends FrameLayout implements ViewTreeObserver.OnPreDrawListene
         // 按上，取消
         else if (action == MotionEvent.ACTION_UP || action == MotionEvent.ACTION_CANCEL) {
             // 删除长按的信息
-            mAnimationHandler.removeMessages(ANIMATION_OPEN);
+            mAnimationHandler.cancelAnimation(ANIMATION_OPEN);
             mAnimationHandler.sendAnimationMessage(ANIMATION_CLOSE);
         }
     }
@@ -596,12 +641,7 @@ class TrashView extends FrameLayout implements ViewTreeObserver.OnPreDrawListene
     /**
      * 控制动画的处理程序。
      */
-    static class AnimationHandler extends Handler {
-
-        /**
-         * 刷新动画的毫秒
-         */
-        private static final long ANIMATION_REFRESH_TIME_MILLIS = 10L;
+    static class AnimationHandler extends Handler implements FloatingAnimationTicker.Animation {
 
         /**
          * 背景动画时间
@@ -638,15 +678,6 @@ class TrashView extends FrameLayout implements ViewTreeObserver.OnPreDrawListene
          */
         private static final int TRASH_MOVE_LIMIT_TOP_OFFSET = -4;
 
-        /**
-         * 表示动画开始的常数
-         */
-        private static final int TYPE_FIRST = 1;
-        /**
-         * 表示动画更新的常数
-         */
-        private static final int TYPE_UPDATE = 2;
-
         /**
          * 阿尔法的最大值
          */
@@ -718,26 +749,60 @@ class TrashView extends FrameLayout implements ViewTreeObserver.OnPreDrawListene
          */
         private final WeakReference<TrashView> mTrashView;
 
+        /**
+         * 共享的动画定时器
+         */
+        private final FloatingAnimationTicker mTicker;
+
+        /**
+         * 延迟开始动画的定时器
+         */
+        private final FloatingTimerWheel.Timer mDelayedTimer;
+
+        /**
+         * 延迟开始的动画代码
+         */
+        private int mDelayedCode;
+
         /**
          * 构造器
          */
-        AnimationHandler(TrashView trashView) {
+        AnimationHandler(TrashView trashView, FloatingAnimationTicker ticker) {
             mTrashView = new WeakReference<>(trashView);
+            mTicker = ticker;
+            mDelayedTimer = new FloatingTimerWheel.Timer(new Runnable() {
+                @Override
+                public void run() {
+                    startAnimation(mDelayedCode);
+                }
+            });
             mStartedCode = ANIMATION_NONE;
+            mDelayedCode = ANIMATION_NONE;
             mTrashIconLimitPosition = new Rect();
             mOvershootInterpolator = new OvershootInterpolator(OVERSHOOT_TENSION);
         }
 
         /**
-         * 进行动画的处理。
+         * 开始动画。
          */
         @Override
         public void handleMessage(Message msg) {
+            startAnimation(msg.what);
+        }
+
+        /**
+         * 开始动画。之后的更新由共享的定时器每帧进行。
+         *
+         * @param animationCode ANIMATION_OPEN,ANIMATION_CLOSE,ANIMATION_FORCE_CLOSE
+         */
+        private void startAnimation(int animationCode) {
             final TrashView trashView = mTrashView.get();
             if (trashView == null) {
                 removeMessages(ANIMATION_OPEN);
                 removeMessages(ANIMATION_CLOSE);
                 removeMessages(ANIMATION_FORCE_CLOSE);
+                mTicker.getTimerWheel().cancel(mDelayedTimer);
+                mTicker.stop(this);
                 return;
             }
 
@@ -746,35 +811,55 @@ class TrashView extends FrameLayout implements ViewTreeObserver.OnPreDrawListene
                 return;
             }
 
-            final int animationCode = msg.what;
-            final int animationType = msg.arg1;
+            // 开始动画时的初始化
+            final TrashViewListener listener = trashView.mTrashViewListener;
+            mStartTime = SystemClock.uptimeMillis();
+            mStartAlpha = trashView.mBackgroundView.getAlpha();
+            mStartTransitionY = trashView.mTrashIconRootView.getTranslationY();
+            mStartedCode = animationCode;
+            if (listener != null) {
+                listener.onTrashAnimationStarted(mStartedCode);
+            }
+            if (onTick(mStartTime)) {
+                mTicker.start(this);
+            } else {
+                mTicker.stop(this);
+            }
+        }
+
+        /**
+         * 进行动画的处理。
+         */
+        @Override
+        public boolean onTick(long frameTimeMillis) {
+            final TrashView trashView = mTrashView.get();
+            // 如果没有效果，就不要动画
+            if (trashView == null || !trashView.isTrashEnabled()) {
+                return false;
+            }
+
+            final int animationCode = mStartedCode;
             final FrameLayout backgroundView = trashView.mBackgroundView;
             final FrameLayout trashIconRootView = trashView.mTrashIconRootView;
             final TrashViewListener listener = trashView.mTrashViewListener;
             final float screenWidth = trashView.mMetrics.widthPixels;
             final float trashViewX = trashView.mParams.x;
 
-            // 开始动画时的初始化
-            if (animationType == TYPE_FIRST) {
-                mStartTime = SystemClock.uptimeMillis();
-                mStartAlpha = backgroundView.getAlpha();
-                mStartTransitionY = trashIconRootView.getTranslationY();
-                mStartedCode = animationCode;
-                if (listener != null) {
-                    listener.onTrashAnimationStarted(mStartedCode);
-                }
-            }
             // 经过的时间
-            final float elapsedTime = SystemClock.uptimeMillis() - mStartTime;
+            final float elapsedTime = Math.max(frameTimeMillis - mStartTime, 0);
 
             // 显示动画
             if (animationCode == ANIMATION_OPEN) {
                 final float currentAlpha = backgroundView.getAlpha();
                 // 如果你没有达到最大的α值，
                 if (currentAlpha < MAX_ALPHA) {
+                    trashView.mLayerPolicy.promote(backgroundView);
                     final float alphaTimeRate = Math.min(elapsedTime / BACKGROUND_DURATION_MILLIS, 1.0f);
                     final float alpha = Math.min(mStartAlpha + alphaTimeRate, MAX_ALPHA);
                     backgroundView.setAlpha(alpha);
+                } else {
+                    // 淡入结束后不需要层
+                    trashView.mLayerPolicy.demote(backgroundView);
                 }
 
                 // 如果超过DelayTime就开始动画
@@ -798,8 +883,7 @@ class TrashView extends FrameLayout implements ViewTreeObserver.OnPreDrawListene
                         clearClippedChildren(trashView.mTrashIconRootView);
                     }
                 }
-
-                sendMessageAtTime(newMessage(animationCode, TYPE_UPDATE), SystemClock.uptimeMillis() + ANIMATION_REFRESH_TIME_MILLIS);
+                return true;
             }
             // 非显示动画
             else if (animationCode == ANIMATION_CLOSE) {
@@ -812,12 +896,14 @@ class TrashView extends FrameLayout implements ViewTreeObserver.OnPreDrawListene
                 final float translationYTimeRate = Math.min(elapsedTime / TRASH_CLOSE_DURATION_MILLIS, 1.0f);
                 // 如果动画没有完成，
                 if (alphaElapseTimeRate < 1.0f || translationYTimeRate < 1.0f) {
+                    trashView.mLayerPolicy.promote(backgroundView);
                     final float position = mStartTransitionY + mTrashIconLimitPosition.height() * translationYTimeRate;
                     trashIconRootView.setTranslationY(position);
-                    sendMessageAtTime(newMessage(animationCode, TYPE_UPDATE), SystemClock.uptimeMillis() + ANIMATION_REFRESH_TIME_MILLIS);
+                    return true;
                 } else {
                     // 强制调整位置
                     trashIconRootView.setTranslationY(mTrashIconLimitPosition.bottom);
+                    trashView.mLayerPolicy.demote(backgroundView);
                     mStartedCode = ANIMATION_NONE;
                     if (listener != null) {
                         listener.onTrashAnimationEnd(ANIMATION_CLOSE);
@@ -827,12 +913,14 @@ class TrashView extends FrameLayout implements ViewTreeObserver.OnPreDrawListene
             // 即時非表示
             else if (animationCode == ANIMATION_FORCE_CLOSE) {
                 backgroundView.setAlpha(0.0f);
+                trashView.mLayerPolicy.demote(backgroundView);
                 trashIconRootView.setTranslationY(mTrashIconLimitPosition.bottom);
                 mStartedCode = ANIMATION_NONE;
                 if (listener != null) {
                     listener.onTrashAnimationEnd(ANIMATION_FORCE_CLOSE);
                 }
             }
+            return false;
         }
 
         /**
@@ -845,13 +933,14 @@ class TrashView extends FrameLayout implements ViewTreeObserver.OnPreDrawListene
         }
 
         /**
-         * 发送动画信息。
+         * 延迟开始动画(使用时间轮，不发送信息)。
          *
          * @param animation   ANIMATION_OPEN,ANIMATION_CLOSE,ANIMATION_FORCE_CLOSE
-         * @param delayMillis 消息的发送时间
+         * @param delayMillis 延迟时间
          */
-        void sendAnimationMessageDelayed(int animation, long delayMillis) {
-            sendMessageAtTime(newMessage(animation, TYPE_FIRST), SystemClock.uptimeMillis() + delayMillis);
+        void scheduleAnimation(int animation, long delayMillis) {
+            mDelayedCode = animation;
+            mTicker.getTimerWheel().schedule(mDelayedTimer, delayMillis);
         }
 
         /**
@@ -860,21 +949,26 @@ class TrashView extends FrameLayout implements ViewTreeObserver.OnPreDrawListene
          * @param animation ANIMATION_OPEN,ANIMATION_CLOSE,ANIMATION_FORCE_CLOSE
          */
         void sendAnimationMessage(int animation) {
-            sendMessage(newMessage(animation, TYPE_FIRST));
+            sendEmptyMessage(animation);
         }
 
         /**
-         * 生成要发送的信息。
+         * 停止动画(包括还没开始的动画)。
          *
          * @param animation ANIMATION_OPEN,ANIMATION_CLOSE,ANIMATION_FORCE_CLOSE
-         * @param type      TYPE_FIRST,TYPE_UPDATE
-         * @return Message
-         */
-        private static Message newMessage(int animation, int type) {
-            final Message message = Message.obtain();
-            message.what = animation;
-            message.arg1 = type;
-            return message;
+         */
+        void cancelAnimation(int animation) {
+            removeMessages(animation);
+            if (mDelayedCode == animation) {
+                mTicker.getTimerWheel().cancel(mDelayedTimer);
+            }
+            if (mStartedCode == animation) {
+                mTicker.stop(this);
+                final TrashView trashView = mTrashView.get();
+                if (trashView != null) {
+                    trashView.mLayerPolicy.demote(trashView.mBackgroundView);
+                }
+            }
         }
 
         /**
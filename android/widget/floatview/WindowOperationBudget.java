@@ -0,0 +1,193 @@
+/**
+ * Copyright 2015 RECRUIT LIFESTYLE CO., LTD.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.taptap.common.widget.floatview;
+
+/**
+ * Upper bounds of the WindowManager calls for the canonical scenarios.
+ * Pass one to {@link FloatingViewManager#replayGestureTrace(byte[], WindowOperationBudget, GestureReplayListener)}
+ * so that a replayed trace fails when a regression adds extra addView, updateViewLayout or removeView calls,
+ * or check the calls made outside a replay with {@link FloatingViewManager#verifyWindowOperations(WindowOperationBudget)}.
+ * <p>
+ * The updateViewLayout budget of a gesture grows with its touch events and animation frames,
+ * so the same budget fits a short tap and a long fling.
+ */
+public final class WindowOperationBudget {
+
+    /**
+     * FullscreenObserverView is attached with the first FloatingView
+     */
+    private static final int FIRST_ATTACH_WINDOWS = 1;
+
+    /**
+     * TrashView is attached on the first drag
+     */
+    private static final int TRASH_WINDOWS = 1;
+
+    /**
+     * updateViewLayout of a FloatingView on attach(only in onPreDraw when it could not be pre-measured)
+     */
+    private static final int UPDATES_PER_ATTACH = 1;
+
+    /**
+     * updateViewLayout of TrashView on attach or rotation(onSizeChanged, onConfigurationChanged)
+     */
+    private static final int TRASH_UPDATES = 2;
+
+    /**
+     * Slack for the ACTION_DOWN/ACTION_UP of a drag
+     */
+    private static final int DRAG_SLACK = 2;
+
+    /**
+     * Name of the scenario(used in the violation message)
+     */
+    private final String mScenario;
+
+    /**
+     * Maximum addView calls
+     */
+    private final int mAddViewCount;
+
+    /**
+     * Maximum updateViewLayout calls, before the allowance of touch events and frames
+     */
+    private final int mUpdateViewLayoutCount;
+
+    /**
+     * updateViewLayout calls allowed per touch event
+     */
+    private final int mUpdatesPerTouchEvent;
+
+    /**
+     * updateViewLayout calls allowed per animation frame
+     */
+    private final int mUpdatesPerFrame;
+
+    /**
+     * Maximum removeView/removeViewImmediate calls
+     */
+    private final int mRemoveViewCount;
+
+    /**
+     * Constructor
+     */
+    private WindowOperationBudget(String scenario, int addViewCount, int updateViewLayoutCount,
+                                  int updatesPerTouchEvent, int updatesPerFrame, int removeViewCount) {
+        mScenario = scenario;
+        mAddViewCount = addViewCount;
+        mUpdateViewLayoutCount = updateViewLayoutCount;
+        mUpdatesPerTouchEvent = updatesPerTouchEvent;
+        mUpdatesPerFrame = updatesPerFrame;
+        mRemoveViewCount = removeViewCount;
+    }
+
+    /**
+     * Add bubbles to an empty manager(animateInitialMove = false). The TrashView is not attached until the first drag.
+     *
+     * @param bubbleCount number of bubbles added
+     * @param isShared    true if FloatingViewManager#setSharedWindowEnabled is in effect
+     * @return {@link WindowOperationBudget}
+     */
+    public static WindowOperationBudget addBubbles(int bubbleCount, boolean isShared) {
+        final int windows = isShared ? 1 : bubbleCount;
+        return new WindowOperationBudget("add " + bubbleCount + " bubbles", windows + FIRST_ATTACH_WINDOWS,
+                isShared ? 0 : bubbleCount * UPDATES_PER_ATTACH, 0, 0, 0);
+    }
+
+    /**
+     * Drag a bubble across the screen and release it(including the move to the edge).
+     * At most one updateViewLayout per touch event and one per animation frame.
+     *
+     * @return {@link WindowOperationBudget}
+     */
+    public static WindowOperationBudget drag() {
+        return new WindowOperationBudget("drag", TRASH_WINDOWS, TRASH_UPDATES + DRAG_SLACK, 1, 1, 0);
+    }
+
+    /**
+     * Drag a bubble onto the trash and drop it.
+     *
+     * @param isLastBubble true if the dropped bubble was the last one(all windows are removed)
+     * @param isShared     true if FloatingViewManager#setSharedWindowEnabled is in effect
+     * @return {@link WindowOperationBudget}
+     */
+    public static WindowOperationBudget dropOnTrash(boolean isLastBubble, boolean isShared) {
+        final int bubbleWindows = isShared ? 0 : 1;
+        final int otherWindows = isLastBubble ? FIRST_ATTACH_WINDOWS + TRASH_WINDOWS + (isShared ? 1 : 0) : 0;
+        return new WindowOperationBudget("drop on trash", TRASH_WINDOWS, TRASH_UPDATES + DRAG_SLACK, 1, 1,
+                bubbleWindows + otherWindows);
+    }
+
+    /**
+     * Rotate the screen. Each bubble may update its layout once and then on every frame of its move to the edge.
+     *
+     * @param bubbleCount number of bubbles
+     * @param isShared    true if FloatingViewManager#setSharedWindowEnabled is in effect
+     * @return {@link WindowOperationBudget}
+     */
+    public static WindowOperationBudget rotate(int bubbleCount, boolean isShared) {
+        return new WindowOperationBudget("rotate", 0, (isShared ? 0 : bubbleCount * UPDATES_PER_ATTACH) + TRASH_UPDATES,
+                0, isShared ? 0 : bubbleCount, 0);
+    }
+
+    /**
+     * Enter fullscreen(DISPLAY_MODE_HIDE_FULLSCREEN hides the bubbles).
+     * Only the target FloatingView updates its layout, hiding is a visibility change.
+     *
+     * @param bubbleCount number of bubbles
+     * @return {@link WindowOperationBudget}
+     */
+    public static WindowOperationBudget enterFullscreen(int bubbleCount) {
+        return new WindowOperationBudget("enter fullscreen", 0, bubbleCount > 0 ? 1 : 0, 0, 0, 0);
+    }
+
+    /**
+     * Check the calls of one run of the scenario.
+     *
+     * @param addViewCount          addView calls
+     * @param updateViewLayoutCount updateViewLayout calls
+     * @param removeViewCount       removeView/removeViewImmediate calls
+     * @param touchEventCount       touch events dispatched
+     * @param frameCount            animation frames elapsed
+     * @return description of the first exceeded budget(null if within the budget)
+     */
+    String findViolation(int addViewCount, int updateViewLayoutCount, int removeViewCount, int touchEventCount, int frameCount) {
+        if (addViewCount > mAddViewCount) {
+            return describe("addView", addViewCount, mAddViewCount);
+        }
+        final int updateBudget = mUpdateViewLayoutCount + touchEventCount * mUpdatesPerTouchEvent + frameCount * mUpdatesPerFrame;
+        if (updateViewLayoutCount > updateBudget) {
+            return describe("updateViewLayout", updateViewLayoutCount, updateBudget);
+        }
+        if (removeViewCount > mRemoveViewCount) {
+            return describe("removeView", removeViewCount, mRemoveViewCount);
+        }
+        return null;
+    }
+
+    /**
+     * Describe one exceeded budget.
+     */
+    private String describe(String operation, int actual, int budget) {
+        return mScenario + ": " + operation + " was called " + actual + " times(budget:" + budget + ")";
+    }
+
+    @Override
+    public String toString() {
+        return "WindowOperationBudget{scenario=" + mScenario + "}";
+    }
+}